@@ -0,0 +1,37 @@
+package com.murtaq.benchmarks;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks and writes the results as JSON, so that runs of
+ * different commits can be compared. Accepts the usual JMH command line
+ * options, i.e. a benchmark name pattern and "-p size=1024x1024" to restrict
+ * the parameters. Unless "-rff" is given, the results are written to
+ * results/jmh-&lt;timestamp&gt;.json.
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+		if (!commandLine.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		if (!commandLine.getResult().hasValue()) {
+			new File("results").mkdirs();
+			String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+			options.result("results" + File.separator + "jmh-" + timestamp + ".json");
+		}
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,73 @@
+package com.murtaq.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.murtaq.transformations.ITransform;
+
+/**
+ * Measures chains of transformations applied on a single image, either one
+ * after another or fused into a single resampling pass.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChainBenchmark {
+
+	@Param({ "256x256", "1024x1024", "1920x1080", "4096x4096", "7680x4320" })
+	public String size;
+
+	@Param({ "1", "3", "4" })
+	public int channels;
+
+	@Param({ "1", "2", "4", "8" })
+	public int chainLength;
+
+	@Param({ "false", "true" })
+	public boolean fused;
+
+	private List<ITransform> chain;
+	private Mat image, result;
+	private Mat[] buffers;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		image = SyntheticImages.create(size, channels);
+		result = new Mat();
+		buffers = new Mat[] { new Mat(), new Mat() };
+		chain = Chains.create(chainLength, fused);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		Chains.release(chain);
+		image.close();
+		result.close();
+		buffers[0].close();
+		buffers[1].close();
+	}
+
+	@Benchmark
+	public Mat chain() {
+		Chains.apply(chain, image, buffers, result);
+		return result;
+	}
+}
@@ -0,0 +1,80 @@
+package com.murtaq.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+
+import com.murtaq.transformations.Flip;
+import com.murtaq.transformations.FusedTransform;
+import com.murtaq.transformations.IGeometricTransform;
+import com.murtaq.transformations.ITransform;
+import com.murtaq.transformations.TransformContext;
+import com.murtaq.transformations.grid.GridTransform;
+import com.murtaq.transformations.grid.RandomTransform;
+import com.murtaq.transformations.grid.SineFunctionTransform;
+
+/**
+ * Builds and applies the transformation chains used by the chain and pipeline
+ * benchmarks.
+ */
+class Chains {
+
+	private Chains() {
+	}
+
+	/**
+	 * Creates a chain that cycles through a sine transformation, a random
+	 * transformation with a reused distortion and a flip.
+	 * 
+	 * @param length
+	 *            The number of transformations.
+	 * @param fused
+	 *            Whether the chain is fused into a single transformation.
+	 * @return The transformations of the chain.
+	 */
+	static List<ITransform> create(int length, boolean fused) {
+		List<ITransform> chain = new ArrayList<ITransform>();
+		for (int i = 0; i < length; i++) {
+			switch (i % 3) {
+			case 0:
+				chain.add(new GridTransform(new SineFunctionTransform(8, 3, 10, 5, 0, 3, 5, 10, 0)));
+				break;
+			case 1:
+				chain.add(new GridTransform(new RandomTransform(16, 5, false)));
+				break;
+			default:
+				chain.add(new Flip(true, false));
+			}
+		}
+		if (!fused) {
+			return chain;
+		}
+		List<IGeometricTransform> geometric = new ArrayList<IGeometricTransform>();
+		for (ITransform tf : chain) {
+			geometric.add((IGeometricTransform) tf);
+		}
+		List<ITransform> fusedChain = new ArrayList<ITransform>();
+		fusedChain.add(new FusedTransform(geometric));
+		return fusedChain;
+	}
+
+	/**
+	 * Applies the chain like the Transformator does, alternating between two
+	 * buffers for the intermediate results.
+	 */
+	static void apply(List<ITransform> chain, Mat image, Mat[] buffers, Mat result) {
+		Mat src = image;
+		for (int i = 0; i < chain.size(); i++) {
+			Mat dst = i == chain.size() - 1 ? result : buffers[i % 2];
+			chain.get(i).applyOn(src, dst, TransformContext.DEFAULT);
+			src = dst;
+		}
+	}
+
+	static void release(List<ITransform> chain) {
+		for (ITransform tf : chain) {
+			tf.releaseBuffers();
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package com.murtaq.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.murtaq.transformations.Flip;
+
+/**
+ * Measures flipping a single image.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlipBenchmark {
+
+	@Param({ "256x256", "1024x1024", "1920x1080", "4096x4096", "7680x4320" })
+	public String size;
+
+	@Param({ "1", "3", "4" })
+	public int channels;
+
+	@Param({ "h", "v", "hv" })
+	public String direction;
+
+	private Flip flip;
+	private Mat image, result;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		image = SyntheticImages.create(size, channels);
+		result = new Mat();
+		flip = new Flip(direction.contains("h"), direction.contains("v"));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		image.close();
+		result.close();
+	}
+
+	@Benchmark
+	public Mat flip() {
+		flip.applyOn(image, result);
+		return result;
+	}
+}
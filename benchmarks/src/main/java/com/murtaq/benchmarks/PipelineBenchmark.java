@@ -0,0 +1,91 @@
+package com.murtaq.benchmarks;
+
+import static org.bytedeco.javacpp.opencv_core.CV_8U;
+import static org.bytedeco.javacpp.opencv_imgcodecs.CV_LOAD_IMAGE_UNCHANGED;
+import static org.bytedeco.javacpp.opencv_imgcodecs.imdecode;
+import static org.bytedeco.javacpp.opencv_imgcodecs.imencode;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.murtaq.transformations.ITransform;
+
+/**
+ * Measures the work done for a single image by the transformation pipeline:
+ * decoding, transforming and encoding. The image is decoded from and encoded
+ * to memory, so that disk speed doesn't affect the results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+	@Param({ "256x256", "1024x1024", "1920x1080", "4096x4096", "7680x4320" })
+	public String size;
+
+	@Param({ "1", "3", "4" })
+	public int channels;
+
+	@Param({ ".png", ".jpg" })
+	public String format;
+
+	@Param({ "1", "2", "4" })
+	public int chainLength;
+
+	private List<ITransform> chain;
+	private BytePointer encodedSource, encodedResult;
+	private Mat source, result;
+	private Mat[] buffers;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Mat image = SyntheticImages.create(size, channels);
+		encodedSource = new BytePointer();
+		imencode(format, image, encodedSource);
+		image.close();
+		source = new Mat(1, (int) encodedSource.limit(), CV_8U, encodedSource);
+		encodedResult = new BytePointer();
+		result = new Mat();
+		buffers = new Mat[] { new Mat(), new Mat() };
+		chain = Chains.create(chainLength, false);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		Chains.release(chain);
+		source.close();
+		result.close();
+		buffers[0].close();
+		buffers[1].close();
+		encodedSource.close();
+		encodedResult.close();
+	}
+
+	@Benchmark
+	public long decodeTransformEncode() {
+		Mat image = imdecode(source, CV_LOAD_IMAGE_UNCHANGED);
+		Chains.apply(chain, image, buffers, result);
+		image.close();
+		imencode(format, result, encodedResult);
+		return encodedResult.limit();
+	}
+}
@@ -0,0 +1,47 @@
+package com.murtaq.benchmarks;
+
+import static org.bytedeco.javacpp.opencv_core.CV_8UC;
+import static org.bytedeco.javacpp.opencv_imgproc.GaussianBlur;
+
+import java.util.SplittableRandom;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.bytedeco.javacpp.opencv_core.Size;
+
+/**
+ * Creates the images the benchmarks work on, so that no image files are
+ * needed and every run sees the same pixels.
+ */
+public class SyntheticImages {
+
+	private SyntheticImages() {
+	}
+
+	/**
+	 * Creates a smooth noise image, which compresses similar to a photo.
+	 * 
+	 * @param size
+	 *            The size as width x height, i.e. "1920x1080".
+	 * @param channels
+	 *            The number of 8 bit channels.
+	 * @return The image.
+	 */
+	public static Mat create(String size, int channels) {
+		String[] dimensions = size.split("x");
+		int width = Integer.parseInt(dimensions[0]);
+		int height = Integer.parseInt(dimensions[1]);
+
+		Mat noise = new Mat(height, width, CV_8UC(channels));
+		byte[] pixels = new byte[height * width * channels];
+		SplittableRandom random = new SplittableRandom(42);
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (byte) random.nextInt(256);
+		}
+		noise.data().put(pixels);
+
+		Mat image = new Mat();
+		GaussianBlur(noise, image, new Size(7, 7), 0);
+		noise.close();
+		return image;
+	}
+}
@@ -0,0 +1,57 @@
+package com.murtaq.transformations.grid;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.murtaq.transformations.TransformContext;
+
+/**
+ * Measures the generation of a new random distortion, which is done by
+ * RandomTransform.initNewDistortion for every image when the distortion is
+ * regenerated.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistortionBenchmark {
+
+	@Param({ "256x256", "1024x1024", "1920x1080", "4096x4096", "7680x4320" })
+	public String size;
+
+	@Param({ "-1", "2", "8", "32" })
+	public int gridSize;
+
+	private RandomTransform transform;
+	private TransformContext context;
+	private int height, width;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		String[] dimensions = size.split("x");
+		width = Integer.parseInt(dimensions[0]);
+		height = Integer.parseInt(dimensions[1]);
+		transform = new RandomTransform(gridSize, 5, true);
+		context = new TransformContext("benchmark.png", 0, 42);
+	}
+
+	@Benchmark
+	public int generate() {
+		transform.prepare(height, width, context);
+		return transform.getDistortionVersion();
+	}
+}
@@ -0,0 +1,77 @@
+package com.murtaq.transformations.grid;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.murtaq.benchmarks.SyntheticImages;
+
+/**
+ * Measures the warp of a single image by the grid transformations, which is
+ * done by GridTransform.genNewImage for the Java backend. The random
+ * transformation reuses its distortion, so only the warp is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GridTransformBenchmark {
+
+	@Param({ "256x256", "1024x1024", "1920x1080", "4096x4096", "7680x4320" })
+	public String size;
+
+	@Param({ "1", "3", "4" })
+	public int channels;
+
+	@Param({ "-1", "2", "8", "32" })
+	public int gridSize;
+
+	@Param({ "sine", "random" })
+	public String transformation;
+
+	@Param({ "JAVA", "REMAP" })
+	public WarpBackend backend;
+
+	private GridTransform transform;
+	private Mat image, result;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		image = SyntheticImages.create(size, channels);
+		result = new Mat();
+		if (transformation.equals("sine")) {
+			transform = new GridTransform(new SineFunctionTransform(gridSize, 3, 10, 5, 0, 3, 5, 10, 0));
+		} else {
+			transform = new GridTransform(new RandomTransform(gridSize, gridSize < 0 ? 5 : gridSize / 2.0, false));
+		}
+		transform.setBackend(backend);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		transform.releaseBuffers();
+		image.close();
+		result.close();
+	}
+
+	@Benchmark
+	public Mat warp() {
+		transform.applyOn(image, result);
+		return result;
+	}
+}
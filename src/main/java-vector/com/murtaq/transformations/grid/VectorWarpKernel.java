@@ -0,0 +1,152 @@
+package com.murtaq.transformations.grid;
+
+import org.bytedeco.javacpp.indexer.UByteIndexer;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Warps pixel rows of grid squares with the Vector API. The interpolation of
+ * the pixel changes, the clamping, the integer source positions and the
+ * bilinear blend are calculated in float vectors, as many pixels at once as
+ * the CPU has float lanes. So are the offsets of the four source pixels in the
+ * image data. Only loading the source pixels and storing the results are done
+ * pixel by pixel, as the images are in native memory.
+ */
+final class VectorWarpKernel extends WarpKernel {
+
+	private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+	/*
+	 * The lane indexes 0, 1, 2, ... as floats.
+	 */
+	private static final float[] IOTA = new float[FLOATS.length()];
+
+	static {
+		if (INTS.length() != FLOATS.length()) {
+			throw new ExceptionInInitializerError("Int and float vectors have different lane counts.");
+		}
+		for (int i = 0; i < IOTA.length; i++) {
+			IOTA[i] = i;
+		}
+	}
+
+	/*
+	 * Per pixel of the row: the offsets of the four source pixels around the
+	 * target and the fractions of the target between them.
+	 */
+	private int[] topLeftOffset = new int[0], topRightOffset, bottomLeftOffset, bottomRightOffset;
+	private float[] fracX, fracY;
+
+	/*
+	 * Per channel and pixel of the row: the four source pixels and the
+	 * blended result.
+	 */
+	private float[] topLeft = new float[0], topRight, bottomLeft, bottomRight;
+	private int[] result;
+
+	@Override
+	int getMinimumWidth() {
+		return FLOATS.length();
+	}
+
+	@Override
+	void warpRow(UByteIndexer src, UByteIndexer dst, int channels, int height, int width, int row, int col,
+			int count, double rowFraction, double[] deltaX, double[] deltaY) {
+		int lanes = FLOATS.length();
+		// The arrays hold whole vectors, the lanes after the row are ignored
+		int padded = (count + lanes - 1) / lanes * lanes;
+		ensureCapacity(padded, channels);
+		int rowStride = (int) src.strides()[0];
+		int pixelStride = (int) src.strides()[1];
+
+		float fy = (float) rowFraction;
+		float w = count;
+		FloatVector iota = FloatVector.fromArray(FLOATS, IOTA, 0);
+
+		for (int p = 0; p < padded; p += lanes) {
+			FloatVector dj = iota.add(p);
+			FloatVector fx = dj.div(w);
+			FloatVector gx = fx.neg().add(1f);
+			// The same bilinear interpolation as GridTransform.bilinearInterpolation
+			FloatVector dX = gx.mul((float) deltaX[0]).add(fx.mul((float) deltaX[1])).mul(1f - fy)
+					.add(gx.mul((float) deltaX[2]).add(fx.mul((float) deltaX[3])).mul(fy));
+			FloatVector dY = gx.mul((float) deltaY[0]).add(fx.mul((float) deltaY[1])).mul(1f - fy)
+					.add(gx.mul((float) deltaY[2]).add(fx.mul((float) deltaY[3])).mul(fy));
+
+			FloatVector targetX = dj.add(col).add(dX).max(0f).min(width - 1f);
+			FloatVector targetY = dY.add(row).max(0f).min(height - 1f);
+
+			// The targets are not negative, so truncating is the floor
+			IntVector x0 = (IntVector) targetX.convert(VectorOperators.F2I, 0);
+			IntVector y0 = (IntVector) targetY.convert(VectorOperators.F2I, 0);
+			FloatVector wx = targetX.sub((FloatVector) x0.convert(VectorOperators.I2F, 0));
+			FloatVector wy = targetY.sub((FloatVector) y0.convert(VectorOperators.I2F, 0));
+			// The ceiling, which equals the floor for whole positions
+			VectorMask<Integer> partX = wx.compare(VectorOperators.GT, 0f).cast(INTS);
+			VectorMask<Integer> partY = wy.compare(VectorOperators.GT, 0f).cast(INTS);
+
+			IntVector x1 = x0.add(1, partX).mul(pixelStride);
+			IntVector y1 = y0.add(1, partY).mul(rowStride);
+			x0 = x0.mul(pixelStride);
+			y0 = y0.mul(rowStride);
+			y0.add(x0).intoArray(topLeftOffset, p);
+			y0.add(x1).intoArray(topRightOffset, p);
+			y1.add(x0).intoArray(bottomLeftOffset, p);
+			y1.add(x1).intoArray(bottomRightOffset, p);
+			wx.intoArray(fracX, p);
+			wy.intoArray(fracY, p);
+		}
+
+		for (int p = 0; p < count; p++) {
+			for (int c = 0, i = p; c < channels; c++, i += padded) {
+				topLeft[i] = src.get(topLeftOffset[p] + c);
+				topRight[i] = src.get(topRightOffset[p] + c);
+				bottomLeft[i] = src.get(bottomLeftOffset[p] + c);
+				bottomRight[i] = src.get(bottomRightOffset[p] + c);
+			}
+		}
+		for (int c = 0; c < channels; c++) {
+			for (int p = 0, i = c * padded; p < padded; p += lanes, i += lanes) {
+				FloatVector wx = FloatVector.fromArray(FLOATS, fracX, p);
+				FloatVector wy = FloatVector.fromArray(FLOATS, fracY, p);
+				FloatVector gx = wx.neg().add(1f);
+				FloatVector upper = FloatVector.fromArray(FLOATS, topLeft, i).mul(gx)
+						.add(FloatVector.fromArray(FLOATS, topRight, i).mul(wx));
+				FloatVector lower = FloatVector.fromArray(FLOATS, bottomLeft, i).mul(gx)
+						.add(FloatVector.fromArray(FLOATS, bottomRight, i).mul(wx));
+				FloatVector blend = upper.mul(wy.neg().add(1f)).add(lower.mul(wy));
+				// Truncated like the cast of the scalar loop
+				((IntVector) blend.convert(VectorOperators.F2I, 0)).intoArray(result, i);
+			}
+		}
+		long offset = row * dst.strides()[0] + col * dst.strides()[1];
+		for (int p = 0; p < count; p++, offset += dst.strides()[1]) {
+			for (int c = 0, i = p; c < channels; c++, i += padded) {
+				dst.put(offset + c, result[i]);
+			}
+		}
+	}
+
+	private void ensureCapacity(int size, int channels) {
+		if (topLeftOffset.length < size) {
+			topLeftOffset = new int[size];
+			topRightOffset = new int[size];
+			bottomLeftOffset = new int[size];
+			bottomRightOffset = new int[size];
+			fracX = new float[size];
+			fracY = new float[size];
+		}
+		if (topLeft.length < size * channels) {
+			topLeft = new float[size * channels];
+			topRight = new float[size * channels];
+			bottomLeft = new float[size * channels];
+			bottomRight = new float[size * channels];
+			result = new int[size * channels];
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package com.murtaq.jfr;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Reading and decoding a source image.
+ */
+@Name("com.murtaq.Decode")
+@Label("Decode Image")
+public class DecodeEvent extends ImageEvent {
+
+	private static final EventType TYPE = EventType.getEventType(DecodeEvent.class);
+
+	@Label("Format")
+	String format;
+
+	@Label("File Size")
+	@DataAmount
+	long fileSize;
+
+	/**
+	 * Creates the event and starts its timing.
+	 * 
+	 * @return The started event or null, if no recording has it enabled.
+	 */
+	public static DecodeEvent start() {
+		if (!TYPE.isEnabled()) {
+			return null;
+		}
+		DecodeEvent event = new DecodeEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends the event and records it, if recording is enabled.
+	 * 
+	 * @param path
+	 *            The path of the image file.
+	 * @param format
+	 *            The detected format of the file.
+	 * @param fileSize
+	 *            The size of the file in bytes.
+	 * @param image
+	 *            The decoded image data.
+	 */
+	public void complete(String path, Object format, long fileSize, Mat image) {
+		if (end(path, image)) {
+			this.format = String.valueOf(format);
+			this.fileSize = fileSize;
+			commit();
+		}
+	}
+}
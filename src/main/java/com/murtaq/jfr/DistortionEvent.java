@@ -0,0 +1,72 @@
+package com.murtaq.jfr;
+
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Generating a new random distortion for the grid line intersections.
+ */
+@Name("com.murtaq.Distortion")
+@Label("Generate Distortion")
+public class DistortionEvent extends ImageEvent {
+
+	private static final EventType TYPE = EventType.getEventType(DistortionEvent.class);
+
+	@Label("Transformation")
+	String transform;
+
+	@Label("Grid Size")
+	int gridSize;
+
+	@Label("Grid Points")
+	int gridPoints;
+
+	@Label("Variant")
+	int variant;
+
+	/**
+	 * Creates the event and starts its timing.
+	 * 
+	 * @return The started event or null, if no recording has it enabled.
+	 */
+	public static DistortionEvent start() {
+		if (!TYPE.isEnabled()) {
+			return null;
+		}
+		DistortionEvent event = new DistortionEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends the event and records it, if recording is enabled.
+	 * 
+	 * @param path
+	 *            The path of the image the distortion was generated for.
+	 * @param transform
+	 *            The grid transformation, described by its toString().
+	 * @param height
+	 *            The height of the image.
+	 * @param width
+	 *            The width of the image.
+	 * @param gridSize
+	 *            The pixel distance between grid lines.
+	 * @param gridPoints
+	 *            The number of grid line intersections.
+	 * @param variant
+	 *            The variant the distortion belongs to.
+	 */
+	public void complete(String path, Object transform, int height, int width, int gridSize, int gridPoints,
+			int variant) {
+		if (end(path, null)) {
+			this.height = height;
+			this.width = width;
+			this.transform = String.valueOf(transform);
+			this.gridSize = gridSize;
+			this.gridPoints = gridPoints;
+			this.variant = variant;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package com.murtaq.jfr;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Encoding a transformed image and writing it to the disk.
+ */
+@Name("com.murtaq.Encode")
+@Label("Encode Image")
+public class EncodeEvent extends ImageEvent {
+
+	private static final EventType TYPE = EventType.getEventType(EncodeEvent.class);
+
+	@Label("Output")
+	String output;
+
+	@Label("File Size")
+	@DataAmount
+	long fileSize;
+
+	/**
+	 * Creates the event and starts its timing.
+	 * 
+	 * @return The started event or null, if no recording has it enabled.
+	 */
+	public static EncodeEvent start() {
+		if (!TYPE.isEnabled()) {
+			return null;
+		}
+		EncodeEvent event = new EncodeEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends the event and records it, if recording is enabled.
+	 * 
+	 * @param path
+	 *            The path of the source image.
+	 * @param output
+	 *            The file name of the output.
+	 * @param fileSize
+	 *            The size of the written file in bytes.
+	 * @param image
+	 *            The encoded image data.
+	 */
+	public void complete(String path, String output, long fileSize, Mat image) {
+		if (end(path, image)) {
+			this.output = output;
+			this.fileSize = fileSize;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package com.murtaq.jfr;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A step of a grid based transformation, i.e. filling the delta matrices or
+ * warping the image.
+ */
+@Name("com.murtaq.Grid")
+@Label("Grid Transformation Step")
+public class GridEvent extends ImageEvent {
+
+	private static final EventType TYPE = EventType.getEventType(GridEvent.class);
+
+	/**
+	 * Filling the delta matrices with the distortion of the image.
+	 */
+	public static final String FILL_DELTAS = "fillDeltaMatrices";
+
+	/**
+	 * Warping the image with the Java implementation.
+	 */
+	public static final String WARP = "genNewImage";
+
+	/**
+	 * Warping the image with the native remap function.
+	 */
+	public static final String REMAP = "remap";
+
+	@Label("Transformation")
+	String transform;
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Grid Size")
+	int gridSize;
+
+	/**
+	 * Creates the event and starts its timing.
+	 * 
+	 * @return The started event or null, if no recording has it enabled.
+	 */
+	public static GridEvent start() {
+		if (!TYPE.isEnabled()) {
+			return null;
+		}
+		GridEvent event = new GridEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends the event and records it, if recording is enabled.
+	 * 
+	 * @param path
+	 *            The path of the source image.
+	 * @param transform
+	 *            The grid transformation, described by its toString().
+	 * @param operation
+	 *            The step of the transformation.
+	 * @param gridSize
+	 *            The pixel distance between grid lines.
+	 * @param image
+	 *            The image the transformation is applied on.
+	 */
+	public void complete(String path, Object transform, String operation, int gridSize, Mat image) {
+		if (end(path, image)) {
+			this.transform = String.valueOf(transform);
+			this.operation = operation;
+			this.gridSize = gridSize;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.murtaq.jfr;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base class of the events recorded for a single image. The subclasses only
+ * create events while a recording has them enabled, and the fields are only
+ * filled in when the event is actually recorded, so that the events cost
+ * nothing on the image paths while no recording is running.
+ */
+@Category("Image Augmentation")
+@StackTrace(false)
+abstract class ImageEvent extends jdk.jfr.Event {
+
+	@Label("Image")
+	String path;
+
+	@Label("Width")
+	int width;
+
+	@Label("Height")
+	int height;
+
+	@Label("Channels")
+	int channels;
+
+	/**
+	 * Ends the event and records it, if the event is enabled and exceeds the
+	 * configured threshold.
+	 * 
+	 * @param path
+	 *            The path of the source image.
+	 * @param image
+	 *            The image data the event describes. May be null.
+	 * @return Whether the event has to be recorded. Subclasses fill in their
+	 *         own fields and commit the event in that case.
+	 */
+	boolean end(String path, Mat image) {
+		end();
+		if (!shouldCommit()) {
+			return false;
+		}
+		this.path = path;
+		if (image != null && !image.isNull()) {
+			width = image.cols();
+			height = image.rows();
+			channels = image.channels();
+		}
+		return true;
+	}
+}
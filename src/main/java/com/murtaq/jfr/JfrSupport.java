@@ -0,0 +1,26 @@
+package com.murtaq.jfr;
+
+/**
+ * Tells whether the running JVM supports custom Java Flight Recorder events.
+ * The events of this package must only be created if it does, as their super
+ * class is missing on older Java 8 runtimes.
+ */
+public final class JfrSupport {
+
+	/**
+	 * Whether the jdk.jfr API is available.
+	 */
+	public static final boolean AVAILABLE = isAvailable();
+
+	private JfrSupport() {
+	}
+
+	private static boolean isAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event", false, JfrSupport.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.murtaq.jfr;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Applying one transformation of the chain on an image.
+ */
+@Name("com.murtaq.Transform")
+@Label("Transform Image")
+public class TransformEvent extends ImageEvent {
+
+	private static final EventType TYPE = EventType.getEventType(TransformEvent.class);
+
+	@Label("Transformation")
+	String transform;
+
+	@Label("Variant")
+	int variant;
+
+	/**
+	 * Creates the event and starts its timing.
+	 * 
+	 * @return The started event or null, if no recording has it enabled.
+	 */
+	public static TransformEvent start() {
+		if (!TYPE.isEnabled()) {
+			return null;
+		}
+		TransformEvent event = new TransformEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends the event and records it, if recording is enabled.
+	 * 
+	 * @param path
+	 *            The path of the source image.
+	 * @param transform
+	 *            The applied transformation, described by its toString().
+	 * @param variant
+	 *            The variant of the image that is generated.
+	 * @param image
+	 *            The image the transformation was applied on.
+	 */
+	public void complete(String path, Object transform, int variant, Mat image) {
+		if (end(path, image)) {
+			this.transform = String.valueOf(transform);
+			this.variant = variant;
+			commit();
+		}
+	}
+}
@@ -4,25 +4,121 @@ import java.io.File;
 
 import org.bytedeco.javacpp.opencv_core.Mat;
 
+import com.murtaq.util.ImageFormat;
+
 /**
  * A simple representation of an image.
  */
 public class Image {
 
 	private File imageFile;
+	private ImageFormat format;
 	private String targetPath;
 	private Mat imageData;
+	private File archive;
+	private byte[] content;
+	private long encodedSize = -1;
+	private long index;
 
-	Image(File imageFile, String targetPath, Mat imageData) {
+	Image(File imageFile, ImageFormat format, String targetPath, Mat imageData) {
 		this.imageFile = imageFile;
+		this.format = format;
 		this.targetPath = targetPath;
 		this.imageData = imageData;
 	}
 
+	/**
+	 * Returns the image file. For images read from an archive, this is the
+	 * path of the entry appended to the path of the archive, which doesn't
+	 * exist on the disk.
+	 * 
+	 * @return The image file.
+	 */
 	public File getFile() {
 		return imageFile;
 	}
 
+	/**
+	 * Returns the position of the image in the run.
+	 * 
+	 * @return The number of images provided before this one.
+	 */
+	public long getIndex() {
+		return index;
+	}
+
+	void setIndex(long index) {
+		this.index = index;
+	}
+
+	/**
+	 * Returns the archive the image was read from.
+	 * 
+	 * @return The archive or null, if the image is a file of its own.
+	 */
+	public File getArchive() {
+		return archive;
+	}
+
+	/**
+	 * Returns the size of the encoded image.
+	 * 
+	 * @return The size in bytes.
+	 */
+	public long getEncodedSize() {
+		if (encodedSize < 0) {
+			encodedSize = imageFile.length();
+		}
+		return encodedSize;
+	}
+
+	/**
+	 * Sets the encoded image read from an archive, which is decoded instead of
+	 * the image file.
+	 * 
+	 * @param archive
+	 *            The archive the image was read from.
+	 * @param content
+	 *            The encoded image.
+	 */
+	void setContent(File archive, byte[] content) {
+		this.archive = archive;
+		this.content = content;
+		this.encodedSize = content.length;
+	}
+
+	/**
+	 * Returns the encoded image read from an archive.
+	 * 
+	 * @return The encoded image or null, if the image is read from its file or
+	 *         was already decoded.
+	 */
+	byte[] getContent() {
+		return content;
+	}
+
+	/**
+	 * Returns the encoded image read from an archive and drops the reference
+	 * to it, as it is only needed until the image is decoded.
+	 * 
+	 * @return The encoded image or null, if the image is read from its file.
+	 */
+	byte[] takeContent() {
+		byte[] taken = content;
+		content = null;
+		return taken;
+	}
+
+	/**
+	 * Returns the format detected while searching the image files, so that it
+	 * doesn't have to be determined again.
+	 * 
+	 * @return The format of the image file.
+	 */
+	public ImageFormat getFormat() {
+		return format;
+	}
+
 	public String getTargetPath() {
 		return targetPath;
 	}
@@ -31,4 +127,19 @@ public class Image {
 		return imageData;
 	}
 
+	void setImageData(Mat imageData) {
+		this.imageData = imageData;
+	}
+
+	/**
+	 * Releases the native memory of the image data. The image data must not be
+	 * used afterwards.
+	 */
+	public void release() {
+		if (imageData != null) {
+			imageData.close();
+			imageData = null;
+		}
+	}
+
 }
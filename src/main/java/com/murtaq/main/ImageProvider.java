@@ -1,47 +1,237 @@
 package com.murtaq.main;
 
+import static org.bytedeco.javacpp.opencv_core.CV_8UC1;
 import static org.bytedeco.javacpp.opencv_imgcodecs.CV_LOAD_IMAGE_UNCHANGED;
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMREAD_IGNORE_ORIENTATION;
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMREAD_REDUCED_COLOR_2;
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMREAD_REDUCED_COLOR_4;
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMREAD_REDUCED_COLOR_8;
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMREAD_REDUCED_GRAYSCALE_2;
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMREAD_REDUCED_GRAYSCALE_4;
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMREAD_REDUCED_GRAYSCALE_8;
+import static org.bytedeco.javacpp.opencv_imgcodecs.imdecode;
 import static org.bytedeco.javacpp.opencv_imgcodecs.imread;
+import static org.bytedeco.javacpp.opencv_imgproc.INTER_AREA;
+import static org.bytedeco.javacpp.opencv_imgproc.INTER_LINEAR;
+import static org.bytedeco.javacpp.opencv_imgproc.resize;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 import java.util.NoSuchElementException;
 
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.bytedeco.javacpp.opencv_core.Size;
+
+import com.murtaq.jfr.DecodeEvent;
+import com.murtaq.jfr.JfrSupport;
+import com.murtaq.util.ImageFile;
+import com.murtaq.util.ImageFormat;
+import com.murtaq.util.JpegHeader;
+import com.murtaq.util.PngHeader;
+
 /**
  * Custom Iterator that provides the images to be processed by the
- * transformation pipeline.
+ * transformation pipeline. The image files are taken from the given file
+ * iterator one at a time, so that images can be provided while the source
+ * directory is still being searched.
+ * <p>
+ * Images read from an archive are decoded from the content read while
+ * searching the archive. Their target path is the directory of their entry
+ * inside the archive.
+ * <p>
+ * If a target size is set, all images are resized to it right after decoding,
+ * so that the transformations only process the pixels of the outputs. JPEG
+ * files are already shrunk by the decoder by a factor of 2, 4 or 8 as long as
+ * they still cover the target size, which skips most of the decoding work for
+ * large images. JPEG images read from an archive are decoded at full size.
  */
 public class ImageProvider implements Iterator<Image> {
 
-	private List<File> imageFiles;
-	private File sourceFolder;
+	private Iterator<ImageFile> imageFiles;
+	private Path sourcePath;
+	private long provided;
+	private int targetHeight, targetWidth;
 
-	ImageProvider(File[] imageFiles, File sourceFolder) {
-		this.imageFiles = new ArrayList<File>(Arrays.asList(imageFiles));
-		this.sourceFolder = sourceFolder;
+	ImageProvider(Iterator<ImageFile> imageFiles, File sourceFolder) {
+		this.imageFiles = imageFiles;
+		// Single image files given in the command line have no source folder
+		if (sourceFolder != null && !sourceFolder.getPath().isEmpty()) {
+			this.sourcePath = Paths.get(sourceFolder.getAbsolutePath());
+		}
 	}
 
-	public boolean hasNext() {
-		return imageFiles.size() > 0;
+	/**
+	 * Sets the size all images are resized to after decoding.
+	 * 
+	 * @param height
+	 *            The height of the images or 0 to keep the size of the source
+	 *            images.
+	 * @param width
+	 *            The width of the images or 0 to keep the size of the source
+	 *            images.
+	 */
+	public void setTargetSize(int height, int width) {
+		this.targetHeight = height;
+		this.targetWidth = width;
+	}
+
+	public synchronized boolean hasNext() {
+		return imageFiles.hasNext();
 	}
 
 	public Image next() {
-		if (imageFiles.size() <= 0) {
+		// Checking and taking the image in one call, as another thread may
+		// take the last image in between
+		Image image = pollUndecoded();
+		if (image == null) {
 			throw new NoSuchElementException();
 		}
-		File currentImage = imageFiles.get(0);
+		return decode(image);
+	}
+
+	/**
+	 * Returns the next image without loading its image data. This allows the
+	 * caller to decode the image on a different thread using
+	 * {@link #decode(Image)}. Unlike calling {@link #hasNext()} and
+	 * {@link #next()}, checking for and taking the next image is atomic, so
+	 * threads sharing the provider should use this method.
+	 * 
+	 * @return The next image or null, if all images were provided.
+	 */
+	public synchronized Image pollUndecoded() {
+		if (!imageFiles.hasNext()) {
+			return null;
+		}
+		ImageFile imageFile = imageFiles.next();
+		File currentImage = imageFile.getFile();
 		String targetPath = "";
-		if (sourceFolder != null) {
-			targetPath = Paths.get(sourceFolder.getAbsolutePath())
-					.relativize(Paths.get(currentImage.getAbsolutePath()).getParent()).toString();
+		if (sourcePath != null) {
+			targetPath = sourcePath.relativize(Paths.get(currentImage.getAbsolutePath()).getParent()).toString();
+		} else if (imageFile.getArchive() != null) {
+			String entry = imageFile.getEntry();
+			targetPath = entry.substring(0, Math.max(0, entry.lastIndexOf('/'))).replace('/', File.separatorChar);
+		}
+		Image image = new Image(currentImage, imageFile.getFormat(), targetPath, null);
+		image.setIndex(provided++);
+		if (imageFile.getArchive() != null) {
+			image.setContent(imageFile.getArchive(), imageFile.getContent());
+		}
+		return image;
+	}
+
+	/**
+	 * Reads the image data of an image returned by {@link #pollUndecoded()}
+	 * from the disk. Can be called from multiple threads at once.
+	 * 
+	 * @param image
+	 *            The image to decode.
+	 * @return The same image, now containing its image data.
+	 */
+	public Image decode(Image image) {
+		DecodeEvent event = JfrSupport.AVAILABLE ? DecodeEvent.start() : null;
+		byte[] content = image.takeContent();
+		int flags = CV_LOAD_IMAGE_UNCHANGED;
+		// imdecode ignores the reduced modes, so only image files are shrunk
+		if (targetHeight > 0 && content == null && image.getFormat() == ImageFormat.JPEG) {
+			flags = reducedFlags(JpegHeader.read(image.getFile()));
+		}
+		Mat data;
+		if (content == null) {
+			data = imread(image.getFile().getAbsolutePath(), flags);
+		} else {
+			Mat encoded = new Mat(1, Math.max(1, content.length), CV_8UC1);
+			try {
+				encoded.data().put(content, 0, content.length);
+				data = imdecode(encoded, flags);
+			} finally {
+				encoded.close();
+			}
+		}
+		image.setImageData(targetHeight > 0 ? resizeToTarget(data) : data);
+		if (event != null) {
+			event.complete(image.getFile().getPath(), image.getFormat(), image.getEncodedSize(), image.getImageData());
+		}
+		return image;
+	}
+
+	/**
+	 * Estimates the native memory the image data of an image returned by
+	 * {@link #pollUndecoded()} will take, so that it can be reserved before
+	 * decoding. JPEG and PNG images are measured from their headers, taking
+	 * the target size and the reduced JPEG decoding into account. Other images
+	 * and images with unreadable headers are estimated by their encoded size,
+	 * which bounds the decoded size of the uncompressed BMP and PNM formats
+	 * but underestimates compressed TIFF and WebP images.
+	 * 
+	 * @param image
+	 *            The image that will be decoded.
+	 * @return The estimated size of the image data in bytes.
+	 */
+	public long estimateDecodedSize(Image image) {
+		byte[] content = image.getContent();
+		long height = 0, width = 0, pixelBytes = 0;
+		if (image.getFormat() == ImageFormat.JPEG) {
+			JpegHeader header = content == null ? JpegHeader.read(image.getFile()) : JpegHeader.read(content);
+			if (header != null) {
+				// Only image files are decoded reduced
+				int factor = targetHeight > 0 && content == null
+						? header.getReductionFactor(targetHeight, targetWidth) : 1;
+				height = (header.getHeight() + factor - 1) / factor;
+				width = (header.getWidth() + factor - 1) / factor;
+				pixelBytes = header.getComponents() == 1 ? 1 : 3;
+			}
+		} else if (image.getFormat() == ImageFormat.PNG) {
+			PngHeader header = content == null ? PngHeader.read(image.getFile()) : PngHeader.read(content);
+			if (header != null) {
+				height = header.getHeight();
+				width = header.getWidth();
+				pixelBytes = header.getChannels() * header.getBytesPerSample();
+			}
+		}
+		if (pixelBytes == 0) {
+			return image.getEncodedSize();
+		}
+		return height * width * pixelBytes;
+	}
+
+	/**
+	 * Returns the flags to decode a JPEG image with, so that the decoder
+	 * shrinks it as much as possible while still covering the target size.
+	 * The orientation stored in the metadata is ignored like when decoding the
+	 * image unchanged.
+	 */
+	private int reducedFlags(JpegHeader header) {
+		if (header == null) {
+			return CV_LOAD_IMAGE_UNCHANGED;
+		}
+		boolean gray = header.getComponents() == 1;
+		switch (header.getReductionFactor(targetHeight, targetWidth)) {
+		case 8:
+			return (gray ? IMREAD_REDUCED_GRAYSCALE_8 : IMREAD_REDUCED_COLOR_8) | IMREAD_IGNORE_ORIENTATION;
+		case 4:
+			return (gray ? IMREAD_REDUCED_GRAYSCALE_4 : IMREAD_REDUCED_COLOR_4) | IMREAD_IGNORE_ORIENTATION;
+		case 2:
+			return (gray ? IMREAD_REDUCED_GRAYSCALE_2 : IMREAD_REDUCED_COLOR_2) | IMREAD_IGNORE_ORIENTATION;
+		default:
+			return CV_LOAD_IMAGE_UNCHANGED;
+		}
+	}
+
+	/**
+	 * Resizes the decoded image to the target size and releases the decoded
+	 * image.
+	 */
+	private Mat resizeToTarget(Mat data) {
+		if (data.empty() || data.rows() == targetHeight && data.cols() == targetWidth) {
+			return data;
 		}
-		Image nextImage = new Image(currentImage, targetPath, imread(currentImage.getAbsolutePath(), CV_LOAD_IMAGE_UNCHANGED));
-		imageFiles.remove(0);
-		return nextImage;
+		Mat resized = new Mat();
+		boolean shrink = data.rows() >= targetHeight && data.cols() >= targetWidth;
+		resize(data, resized, new Size(targetWidth, targetHeight), 0, 0, shrink ? INTER_AREA : INTER_LINEAR);
+		data.close();
+		return resized;
 	}
 
 }
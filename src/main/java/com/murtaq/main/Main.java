@@ -1,5 +1,9 @@
 package com.murtaq.main;
 
+import java.io.File;
+
+import com.murtaq.output.EncoderSettings;
+import com.murtaq.output.TensorFormat;
 import com.murtaq.parameterParsing.Parameter;
 import com.murtaq.parameterParsing.ParameterStorage;
 import com.murtaq.parameterParsing.ParameterParser;
@@ -13,9 +17,45 @@ public class Main {
 				storage.getParameter(Parameter.SOURCE));
 		Transformator tf = new Transformator(storage.getParameter(Parameter.TRANSFORMATIONS),
 				storage.getParameter(Parameter.TARGET));
+		int[] threads = storage.getParameter(Parameter.THREADS);
+		tf.setStageThreads(threads[0], threads[1], threads[2]);
+		tf.setParallelism(storage.getParameter(Parameter.PARALLELISM));
+		tf.setWarpBackend(storage.getParameter(Parameter.WARP_BACKEND));
+		tf.setWarpAccuracy(storage.getParameter(Parameter.WARP_ACCURACY));
+		tf.setVariants(storage.<Integer> getParameter(Parameter.VARIANTS));
+		long[] seed = storage.getParameter(Parameter.SEED);
+		if (seed.length == 1) {
+			tf.setSeed(seed[0]);
+		}
+		tf.setTileSize(storage.<Integer> getParameter(Parameter.TILE_SIZE));
+		tf.setFuseTransforms(storage.<Boolean> getParameter(Parameter.FUSE));
+		long[] cacheLimits = storage.getParameter(Parameter.DISTORTION_CACHE);
+		tf.setDistortionCacheLimits((int) cacheLimits[0], cacheLimits[1]);
+		tf.setMaxNativeMemory(storage.<Long> getParameter(Parameter.MAX_NATIVE_MEMORY));
+		tf.setShardSize(storage.<Long> getParameter(Parameter.SHARD_SIZE));
+		TensorFormat[] tensorFormat = storage.getParameter(Parameter.NPY);
+		if (tensorFormat.length == 1) {
+			tf.setTensorFormat(tensorFormat[0]);
+		}
+		int[] targetSize = storage.getParameter(Parameter.TARGET_SIZE);
+		if (targetSize.length == 2) {
+			tf.setTargetSize(targetSize[0], targetSize[1]);
+		}
+		tf.setEncoderSettings(storage.<EncoderSettings> getParameter(Parameter.ENCODER));
+		tf.setResume(storage.<Boolean> getParameter(Parameter.RESUME));
+		tf.setProgressInterval(storage.<Integer> getParameter(Parameter.PROGRESS));
+		tf.setReportFile(optionalFile(storage.<File> getParameter(Parameter.REPORT)));
+		tf.setPrometheusFile(optionalFile(storage.<File> getParameter(Parameter.PROMETHEUS)));
 		tf.transformImages(loader);
 
 		System.out.println("Program finished.");
 	}
 
+	/*
+	 * The parser stores an empty file for optional files that weren't given.
+	 */
+	private static File optionalFile(File file) {
+		return file.getPath().isEmpty() ? null : file;
+	}
+
 }
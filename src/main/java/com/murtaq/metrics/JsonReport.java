@@ -0,0 +1,82 @@
+package com.murtaq.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the metrics of a run as JSON document, so that runs can be compared
+ * by scripts.
+ */
+public class JsonReport {
+
+	private JsonReport() {
+	}
+
+	/**
+	 * Writes the report.
+	 * 
+	 * @param metrics
+	 *            The metrics of the run.
+	 * @param file
+	 *            The file to write the report to.
+	 * @throws IOException
+	 *             when the file can't be written.
+	 */
+	public static void write(RunMetrics metrics, File file) throws IOException {
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		field(json, "durationSeconds", metrics.getElapsedSeconds());
+		field(json, "images", metrics.getImages());
+		field(json, "outputs", metrics.getOutputs());
+		field(json, "imagesPerSecond", metrics.getImagesPerSecond());
+		field(json, "outputsPerSecond", metrics.getOutputsPerSecond());
+		field(json, "inputBytes", metrics.getInputBytes());
+		field(json, "outputBytes", metrics.getOutputBytes());
+		field(json, "inputMegabytesPerSecond", metrics.getInputMegabytesPerSecond());
+		field(json, "outputMegabytesPerSecond", metrics.getOutputMegabytesPerSecond());
+		field(json, "peakNativeMemoryBytes", metrics.getPeakNativeMemoryBytes());
+		json.append("  \"stages\": [");
+		boolean first = true;
+		for (Map.Entry<String, LatencyHistogram> stage : metrics.getStages().entrySet()) {
+			LatencyHistogram histogram = stage.getValue();
+			json.append(first ? "\n" : ",\n");
+			first = false;
+			json.append("    {\"name\": \"").append(escape(stage.getKey())).append("\"");
+			json.append(", \"count\": ").append(histogram.getCount());
+			json.append(", \"totalSeconds\": ").append(number(histogram.getTotalNanos() / 1e9));
+			json.append(", \"meanMillis\": ").append(number(histogram.getMeanNanos() / 1e6));
+			json.append(", \"p50Millis\": ").append(number(histogram.getPercentileNanos(50) / 1e6));
+			json.append(", \"p90Millis\": ").append(number(histogram.getPercentileNanos(90) / 1e6));
+			json.append(", \"p99Millis\": ").append(number(histogram.getPercentileNanos(99) / 1e6));
+			json.append(", \"maxMillis\": ").append(number(histogram.getMaxNanos() / 1e6));
+			json.append("}");
+		}
+		json.append("\n  ]\n}\n");
+
+		try (Writer writer = new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8)) {
+			writer.write(json.toString());
+		}
+	}
+
+	private static void field(StringBuilder json, String name, long value) {
+		json.append("  \"").append(name).append("\": ").append(value).append(",\n");
+	}
+
+	private static void field(StringBuilder json, String name, double value) {
+		json.append("  \"").append(name).append("\": ").append(number(value)).append(",\n");
+	}
+
+	private static String number(double value) {
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+}
@@ -0,0 +1,109 @@
+package com.murtaq.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the durations of an operation in buckets with exponentially growing
+ * bounds. Bucket i counts the durations of at most 2^i microseconds, which
+ * keeps the histogram small while still telling apart microseconds and
+ * minutes. Can be updated by multiple threads at once.
+ */
+public class LatencyHistogram {
+
+	/*
+	 * The last bucket ends at 2^39 microseconds, about six days.
+	 */
+	private static final int BUCKETS = 40;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Records the duration of a single operation.
+	 * 
+	 * @param nanos
+	 *            The duration in nanoseconds.
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(0, nanos) / 1000;
+		int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+		buckets.incrementAndGet(bucket);
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		long max;
+		while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+			continue;
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getTotalNanos() {
+		return totalNanos.get();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	public double getMeanNanos() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) totalNanos.get() / n;
+	}
+
+	/**
+	 * Estimates a percentile of the recorded durations by the upper bound of
+	 * the bucket containing it.
+	 * 
+	 * @param percentile
+	 *            The percentile between 0 and 100.
+	 * @return The estimated duration in nanoseconds, at most the maximum
+	 *         recorded duration.
+	 */
+	public double getPercentileNanos(double percentile) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(n * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return Math.min(getUpperBoundNanos(i), maxNanos.get());
+			}
+		}
+		return maxNanos.get();
+	}
+
+	public int getBucketCount() {
+		return BUCKETS;
+	}
+
+	/**
+	 * Returns the number of durations recorded in a bucket.
+	 * 
+	 * @param bucket
+	 *            The index of the bucket.
+	 * @return The number of durations.
+	 */
+	public long getBucket(int bucket) {
+		return buckets.get(bucket);
+	}
+
+	/**
+	 * Returns the largest duration counted by a bucket.
+	 * 
+	 * @param bucket
+	 *            The index of the bucket.
+	 * @return The upper bound in nanoseconds.
+	 */
+	public static double getUpperBoundNanos(int bucket) {
+		return (1L << bucket) * 1000.0;
+	}
+}
@@ -0,0 +1,88 @@
+package com.murtaq.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the metrics of a run in the Prometheus text format, to be picked up
+ * by the textfile collector of the node exporter. The file is replaced
+ * atomically, so that the collector never reads a partially written file.
+ */
+public class PrometheusTextfile {
+
+	private static final String PREFIX = "imageaugment_";
+
+	private PrometheusTextfile() {
+	}
+
+	/**
+	 * Writes the current state of the metrics.
+	 * 
+	 * @param metrics
+	 *            The metrics of the run.
+	 * @param file
+	 *            The file to write the metrics to.
+	 * @throws IOException
+	 *             when the file can't be written.
+	 */
+	public static void write(RunMetrics metrics, File file) throws IOException {
+		StringBuilder text = new StringBuilder();
+		metric(text, "images_total", "counter", "Number of decoded source images.", metrics.getImages());
+		metric(text, "outputs_total", "counter", "Number of written output images.", metrics.getOutputs());
+		metric(text, "input_bytes_total", "counter", "Size of the decoded image files.", metrics.getInputBytes());
+		metric(text, "output_bytes_total", "counter", "Size of the written image files.", metrics.getOutputBytes());
+		metric(text, "native_memory_bytes", "gauge",
+				"Native memory in use by images, results, buffers, scratch matrices and caches.",
+				metrics.getNativeMemoryBytes());
+		metric(text, "native_memory_peak_bytes", "gauge",
+				"Highest native memory in use by images, results, buffers, scratch matrices and caches.",
+				metrics.getPeakNativeMemoryBytes());
+
+		text.append("# HELP ").append(PREFIX).append("stage_seconds Duration of each stage per image.\n");
+		text.append("# TYPE ").append(PREFIX).append("stage_seconds histogram\n");
+		for (Map.Entry<String, LatencyHistogram> stage : metrics.getStages().entrySet()) {
+			LatencyHistogram histogram = stage.getValue();
+			String label = "stage=\"" + escape(stage.getKey()) + "\"";
+			long cumulative = 0;
+			for (int i = 0; i < histogram.getBucketCount(); i++) {
+				cumulative += histogram.getBucket(i);
+				text.append(PREFIX).append("stage_seconds_bucket{").append(label).append(",le=\"")
+						.append(number(LatencyHistogram.getUpperBoundNanos(i) / 1e9)).append("\"} ").append(cumulative)
+						.append('\n');
+			}
+			text.append(PREFIX).append("stage_seconds_bucket{").append(label).append(",le=\"+Inf\"} ")
+					.append(histogram.getCount()).append('\n');
+			text.append(PREFIX).append("stage_seconds_sum{").append(label).append("} ")
+					.append(number(histogram.getTotalNanos() / 1e9)).append('\n');
+			text.append(PREFIX).append("stage_seconds_count{").append(label).append("} ").append(histogram.getCount())
+					.append('\n');
+		}
+
+		File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+		try (Writer writer = new OutputStreamWriter(Files.newOutputStream(temp.toPath()), StandardCharsets.UTF_8)) {
+			writer.write(text.toString());
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void metric(StringBuilder text, String name, String type, String help, long value) {
+		text.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+		text.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+		text.append(PREFIX).append(name).append(' ').append(value).append('\n');
+	}
+
+	private static String number(double value) {
+		return String.format(Locale.ROOT, "%.6f", value);
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
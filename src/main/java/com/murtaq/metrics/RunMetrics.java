@@ -0,0 +1,194 @@
+package com.murtaq.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the throughput and the latencies of each stage of a transformation
+ * run. The stages are: the discovery of the image files, decoding, each
+ * transformation of the chain, creating the target directories and encoding.
+ * Can be updated by multiple threads at once.
+ */
+public class RunMetrics {
+
+	public static final String DISCOVERY = "discovery";
+	public static final String DECODE = "decode";
+	public static final String DIRECTORIES = "directories";
+	public static final String ENCODE = "encode";
+
+	private final Map<String, LatencyHistogram> stages = new LinkedHashMap<String, LatencyHistogram>();
+	private final List<LatencyHistogram> transformStages = new ArrayList<LatencyHistogram>();
+	private final long startNanos = System.nanoTime();
+	private final AtomicLong images = new AtomicLong();
+	private final AtomicLong outputs = new AtomicLong();
+	private final AtomicLong inputBytes = new AtomicLong();
+	private final AtomicLong outputBytes = new AtomicLong();
+	private volatile long nativeMemoryBytes, peakNativeMemoryBytes;
+	private volatile long endNanos;
+
+	/**
+	 * Creates the metrics for a new run.
+	 * 
+	 * @param transformNames
+	 *            The names of the transformations in the chain, in the order
+	 *            they are applied.
+	 */
+	public RunMetrics(List<String> transformNames) {
+		stages.put(DISCOVERY, new LatencyHistogram());
+		stages.put(DECODE, new LatencyHistogram());
+		for (int i = 0; i < transformNames.size(); i++) {
+			LatencyHistogram histogram = new LatencyHistogram();
+			stages.put("transform " + (i + 1) + " " + transformNames.get(i), histogram);
+			transformStages.add(histogram);
+		}
+		stages.put(DIRECTORIES, new LatencyHistogram());
+		stages.put(ENCODE, new LatencyHistogram());
+	}
+
+	/**
+	 * Returns the histogram of a stage.
+	 * 
+	 * @param name
+	 *            One of the stage names defined by this class.
+	 * @return The histogram.
+	 */
+	public LatencyHistogram stage(String name) {
+		return stages.get(name);
+	}
+
+	/**
+	 * Returns the histogram of a transformation of the chain.
+	 * 
+	 * @param index
+	 *            The index of the transformation in the chain.
+	 * @return The histogram.
+	 */
+	public LatencyHistogram transformStage(int index) {
+		return transformStages.get(index);
+	}
+
+	/**
+	 * Returns the histograms of all stages by their name, in the order the
+	 * stages are passed by an image.
+	 * 
+	 * @return The histograms.
+	 */
+	public Map<String, LatencyHistogram> getStages() {
+		return Collections.unmodifiableMap(stages);
+	}
+
+	/**
+	 * Counts a decoded source image.
+	 * 
+	 * @param bytes
+	 *            The size of the image file.
+	 */
+	public void imageRead(long bytes) {
+		images.incrementAndGet();
+		inputBytes.addAndGet(bytes);
+	}
+
+	/**
+	 * Counts a written output image.
+	 * 
+	 * @param bytes
+	 *            The size of the written file.
+	 */
+	public void outputWritten(long bytes) {
+		outputs.incrementAndGet();
+		outputBytes.addAndGet(bytes);
+	}
+
+	/**
+	 * Updates the tracked native memory. It covers the images in flight, their
+	 * results, the intermediate buffers and scratch matrices of the threads
+	 * and the cached distortions and maps, but not the short-lived matrices
+	 * inside a single transformation or the buffers of the codecs.
+	 * 
+	 * @param current
+	 *            The native memory currently in use.
+	 * @param peak
+	 *            The highest native memory used so far.
+	 */
+	public void updateNativeMemory(long current, long peak) {
+		nativeMemoryBytes = current;
+		peakNativeMemoryBytes = peak;
+	}
+
+	/**
+	 * Stops the clock of the run.
+	 */
+	public void finish() {
+		endNanos = System.nanoTime();
+	}
+
+	public long getImages() {
+		return images.get();
+	}
+
+	public long getOutputs() {
+		return outputs.get();
+	}
+
+	public long getInputBytes() {
+		return inputBytes.get();
+	}
+
+	public long getOutputBytes() {
+		return outputBytes.get();
+	}
+
+	public long getNativeMemoryBytes() {
+		return nativeMemoryBytes;
+	}
+
+	public long getPeakNativeMemoryBytes() {
+		return peakNativeMemoryBytes;
+	}
+
+	/**
+	 * Returns the duration of the run so far or, if finished, in total.
+	 * 
+	 * @return The duration in seconds.
+	 */
+	public double getElapsedSeconds() {
+		long end = endNanos != 0 ? endNanos : System.nanoTime();
+		return (end - startNanos) / 1e9;
+	}
+
+	public double getImagesPerSecond() {
+		return perSecond(images.get());
+	}
+
+	public double getOutputsPerSecond() {
+		return perSecond(outputs.get());
+	}
+
+	public double getInputMegabytesPerSecond() {
+		return perSecond(inputBytes.get()) / (1024 * 1024);
+	}
+
+	public double getOutputMegabytesPerSecond() {
+		return perSecond(outputBytes.get()) / (1024 * 1024);
+	}
+
+	private double perSecond(long value) {
+		double seconds = getElapsedSeconds();
+		return seconds > 0 ? value / seconds : 0;
+	}
+
+	/**
+	 * Returns a single line summarizing the progress of the run.
+	 * 
+	 * @return The progress line.
+	 */
+	public String progressLine() {
+		return String.format("Progress: %d images, %d outputs in %.0f s, %.1f images/s, %.1f MB/s read, %.1f MB/s written, native memory %d MB (peak %d MB)",
+				getImages(), getOutputs(), getElapsedSeconds(), getImagesPerSecond(), getInputMegabytesPerSecond(),
+				getOutputMegabytesPerSecond(), nativeMemoryBytes / (1024 * 1024), peakNativeMemoryBytes / (1024 * 1024));
+	}
+}
@@ -0,0 +1,192 @@
+package com.murtaq.output;
+
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMWRITE_JPEG_OPTIMIZE;
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMWRITE_JPEG_PROGRESSIVE;
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMWRITE_JPEG_QUALITY;
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMWRITE_PNG_COMPRESSION;
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMWRITE_PNG_STRATEGY;
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMWRITE_PNG_STRATEGY_DEFAULT;
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMWRITE_PNG_STRATEGY_FILTERED;
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMWRITE_PNG_STRATEGY_FIXED;
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMWRITE_PNG_STRATEGY_HUFFMAN_ONLY;
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMWRITE_PNG_STRATEGY_RLE;
+import static org.bytedeco.javacpp.opencv_imgcodecs.IMWRITE_WEBP_QUALITY;
+
+import java.util.Arrays;
+
+import com.murtaq.util.ImageFormat;
+
+/**
+ * The options passed to the OpenCV encoders and the format the outputs are
+ * written in. Options which are not set keep the defaults of OpenCV.
+ */
+public class EncoderSettings {
+
+	/**
+	 * The zlib strategies of the PNG encoder.
+	 */
+	public enum PngStrategy {
+
+		DEFAULT(IMWRITE_PNG_STRATEGY_DEFAULT),
+		FILTERED(IMWRITE_PNG_STRATEGY_FILTERED),
+		HUFFMAN_ONLY(IMWRITE_PNG_STRATEGY_HUFFMAN_ONLY),
+		RLE(IMWRITE_PNG_STRATEGY_RLE),
+		FIXED(IMWRITE_PNG_STRATEGY_FIXED);
+
+		private final int flag;
+
+		private PngStrategy(int flag) {
+			this.flag = flag;
+		}
+	}
+
+	private static final int UNSET = -1;
+
+	private String outputExtension;
+	private int jpegQuality = UNSET;
+	private boolean jpegOptimize, jpegProgressive;
+	private int pngCompression = UNSET;
+	private PngStrategy pngStrategy;
+	private int webpQuality = UNSET;
+
+	/**
+	 * Sets the format all outputs are written in, instead of the format of
+	 * their source image.
+	 * 
+	 * @param extension
+	 *            The file extension of the format, i.e. "png", or null to keep
+	 *            the format of the source images.
+	 */
+	public void setOutputExtension(String extension) {
+		if (extension != null && ImageFormat.fromExtension("." + extension) == null) {
+			throw new IllegalArgumentException("Unsupported output format: " + extension);
+		}
+		this.outputExtension = extension;
+	}
+
+	/**
+	 * Returns the extension of the format all outputs are written in.
+	 * 
+	 * @return The extension or null, if the outputs keep the format of their
+	 *         source.
+	 */
+	public String getOutputExtension() {
+		return outputExtension;
+	}
+
+	public void setJpegQuality(int quality) {
+		checkRange(quality, 0, 100, "JPEG quality");
+		this.jpegQuality = quality;
+	}
+
+	public void setJpegOptimize(boolean optimize) {
+		this.jpegOptimize = optimize;
+	}
+
+	public void setJpegProgressive(boolean progressive) {
+		this.jpegProgressive = progressive;
+	}
+
+	/**
+	 * Sets the zlib compression level of PNG outputs. Lower levels encode
+	 * faster but produce larger files.
+	 * 
+	 * @param level
+	 *            The level from 0 (no compression) to 9.
+	 */
+	public void setPngCompression(int level) {
+		checkRange(level, 0, 9, "PNG compression level");
+		this.pngCompression = level;
+	}
+
+	public void setPngStrategy(PngStrategy strategy) {
+		this.pngStrategy = strategy;
+	}
+
+	public void setWebpQuality(int quality) {
+		checkRange(quality, 1, 100, "WebP quality");
+		this.webpQuality = quality;
+	}
+
+	/**
+	 * Returns the encoder parameters for an output file in the form expected by
+	 * imwrite and imencode.
+	 * 
+	 * @param name
+	 *            The name of the output file, whose extension selects the
+	 *            encoder.
+	 * @return Pairs of parameter ids and values. Empty, if the encoder keeps
+	 *         its defaults.
+	 */
+	public int[] getParams(String name) {
+		ImageFormat format = ImageFormat.fromExtension(name);
+		int[] params = new int[8];
+		int length = 0;
+		if (format == ImageFormat.JPEG) {
+			if (jpegQuality != UNSET) {
+				params[length++] = IMWRITE_JPEG_QUALITY;
+				params[length++] = jpegQuality;
+			}
+			if (jpegOptimize) {
+				params[length++] = IMWRITE_JPEG_OPTIMIZE;
+				params[length++] = 1;
+			}
+			if (jpegProgressive) {
+				params[length++] = IMWRITE_JPEG_PROGRESSIVE;
+				params[length++] = 1;
+			}
+		} else if (format == ImageFormat.PNG) {
+			if (pngCompression != UNSET) {
+				params[length++] = IMWRITE_PNG_COMPRESSION;
+				params[length++] = pngCompression;
+			}
+			if (pngStrategy != null) {
+				params[length++] = IMWRITE_PNG_STRATEGY;
+				params[length++] = pngStrategy.flag;
+			}
+		} else if (format == ImageFormat.WEBP && webpQuality != UNSET) {
+			params[length++] = IMWRITE_WEBP_QUALITY;
+			params[length++] = webpQuality;
+		}
+		return Arrays.copyOf(params, length);
+	}
+
+	/**
+	 * Describes the options that differ from the defaults, i.e.
+	 * "format=png pngCompression=1".
+	 * 
+	 * @return The description or an empty string, if no option is set.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder desc = new StringBuilder();
+		if (outputExtension != null) {
+			desc.append(" format=").append(outputExtension);
+		}
+		if (jpegQuality != UNSET) {
+			desc.append(" jpegQuality=").append(jpegQuality);
+		}
+		if (jpegOptimize) {
+			desc.append(" jpegOptimize");
+		}
+		if (jpegProgressive) {
+			desc.append(" jpegProgressive");
+		}
+		if (pngCompression != UNSET) {
+			desc.append(" pngCompression=").append(pngCompression);
+		}
+		if (pngStrategy != null) {
+			desc.append(" pngStrategy=").append(pngStrategy);
+		}
+		if (webpQuality != UNSET) {
+			desc.append(" webpQuality=").append(webpQuality);
+		}
+		return desc.toString().trim();
+	}
+
+	private static void checkRange(int value, int min, int max, String name) {
+		if (value < min || value > max) {
+			throw new IllegalArgumentException("The " + name + " has to be between " + min + " and " + max + ".");
+		}
+	}
+}
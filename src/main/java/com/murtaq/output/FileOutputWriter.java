@@ -0,0 +1,83 @@
+package com.murtaq.output;
+
+import static org.bytedeco.javacpp.opencv_imgcodecs.imwrite;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+
+import com.murtaq.main.Image;
+import com.murtaq.metrics.LatencyHistogram;
+
+/**
+ * Writes each transformed image to its own file, mirroring the directory
+ * structure of the source location in the target directory.
+ */
+public class FileOutputWriter implements OutputWriter {
+
+	private final File targetDir;
+	private final LatencyHistogram directories;
+	private final EncoderSettings settings;
+
+	/**
+	 * Creates a new writer.
+	 * 
+	 * @param targetDir
+	 *            The directory the images are written to. If it doesn't exist,
+	 *            the images are written next to their source images.
+	 * @param directories
+	 *            Records the time spent creating directories.
+	 * @param settings
+	 *            The options of the encoders.
+	 */
+	public FileOutputWriter(File targetDir, LatencyHistogram directories, EncoderSettings settings) {
+		this.targetDir = targetDir;
+		this.directories = directories;
+		this.settings = settings;
+	}
+
+	@Override
+	public long write(Image image, int variant, String name, Mat data) throws IOException {
+		String target;
+		if (targetDir.exists()) {
+			target = targetDir.getPath() + File.separator + image.getTargetPath() + File.separator + name;
+			File parent = new File(target).getParentFile();
+			long start = System.nanoTime();
+			// Another encode thread may have created the directory meanwhile
+			if (!parent.exists() && !parent.mkdirs() && !parent.isDirectory()) {
+				throw new IOException("Couldn't create dir: " + parent);
+			}
+			directories.record(System.nanoTime() - start);
+		} else if (image.getArchive() != null) {
+			throw new IOException("Images read from an archive need a target directory.");
+		} else {
+			target = image.getFile().getParentFile().getAbsolutePath() + File.separator + name;
+		}
+		int[] params = settings.getParams(name);
+		boolean written;
+		try {
+			written = params.length == 0 ? imwrite(target, data) : imwrite(target, data, params);
+		} catch (RuntimeException e) {
+			// OpenCV throws for extensions without an encoder
+			throw new IOException("Couldn't encode image: " + target + ": " + e.getMessage(), e);
+		}
+		if (!written) {
+			throw new IOException("Couldn't write image: " + target);
+		}
+		return new File(target).length();
+	}
+
+	@Override
+	public boolean isBesideSource() {
+		return !targetDir.exists();
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public void close() {
+	}
+}
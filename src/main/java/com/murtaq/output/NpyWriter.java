@@ -0,0 +1,240 @@
+package com.murtaq.output;
+
+import static org.bytedeco.javacpp.opencv_core.CV_16U;
+import static org.bytedeco.javacpp.opencv_core.CV_32F;
+import static org.bytedeco.javacpp.opencv_core.CV_32FC1;
+import static org.bytedeco.javacpp.opencv_core.CV_32FC3;
+import static org.bytedeco.javacpp.opencv_core.CV_8U;
+import static org.bytedeco.javacpp.opencv_core.CV_8UC3;
+import static org.bytedeco.javacpp.opencv_core.split;
+import static org.bytedeco.javacpp.opencv_imgproc.COLOR_BGR2RGB;
+import static org.bytedeco.javacpp.opencv_imgproc.COLOR_BGRA2RGB;
+import static org.bytedeco.javacpp.opencv_imgproc.COLOR_GRAY2RGB;
+import static org.bytedeco.javacpp.opencv_imgproc.INTER_AREA;
+import static org.bytedeco.javacpp.opencv_imgproc.INTER_LINEAR;
+import static org.bytedeco.javacpp.opencv_imgproc.cvtColor;
+import static org.bytedeco.javacpp.opencv_imgproc.resize;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.bytedeco.javacpp.opencv_core.MatVector;
+import org.bytedeco.javacpp.opencv_core.Size;
+
+import com.murtaq.main.Image;
+import com.murtaq.util.ScratchMats;
+
+/**
+ * Stores the transformed images as arrays of a fixed shape in a single .npy
+ * file, which training code can memory-map without decoding any images. The
+ * images are resized to the shape, converted to RGB and written straight into
+ * the memory-mapped file.
+ * <p>
+ * Each output is stored at the position of its source image in the run times
+ * the number of variants plus its variant. As the number of images is only
+ * known at the end of the run, the file grows in chunks and the header is
+ * patched when the writer is closed. A tab separated sidecar file maps each
+ * index to the source image and variant.
+ */
+public class NpyWriter implements OutputWriter {
+
+	/*
+	 * Total size of the header. Version 1.0 headers are padded to a multiple
+	 * of 64 bytes, and 128 bytes leave room for any image count.
+	 */
+	private static final int HEADER_BYTES = 128;
+
+	/*
+	 * Bytes mapped at once. Each mapping holds at least a single image.
+	 */
+	private static final long CHUNK_BYTES = 256L * 1024 * 1024;
+
+	private final TensorFormat format;
+	private final int variants;
+	private final long imageBytes;
+	private final int imagesPerChunk;
+	private final RandomAccessFile file;
+	private final Writer index;
+	private final List<MappedByteBuffer> chunks = new ArrayList<MappedByteBuffer>();
+	private final ScratchMats scratch = new ScratchMats(3);
+	private long count;
+
+	/**
+	 * Creates a new writer.
+	 * 
+	 * @param directory
+	 *            The directory the images.npy file and its images.tsv sidecar
+	 *            file are written to.
+	 * @param format
+	 *            The shape and element type of the arrays.
+	 * @param variants
+	 *            The number of variants generated per source image.
+	 * @throws IOException
+	 *             when the files can't be created.
+	 */
+	public NpyWriter(File directory, TensorFormat format, int variants) throws IOException {
+		this.format = format;
+		this.variants = variants;
+		this.imageBytes = format.getImageBytes();
+		this.imagesPerChunk = (int) Math.min(Integer.MAX_VALUE / imageBytes, Math.max(1, CHUNK_BYTES / imageBytes));
+		this.file = new RandomAccessFile(new File(directory, "images.npy"), "rw");
+		file.setLength(0);
+		this.index = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(new File(directory, "images.tsv")), StandardCharsets.UTF_8));
+		index.write("index\tsource\tvariant\n");
+	}
+
+	@Override
+	public long write(Image image, int variant, String name, Mat data) throws IOException {
+		long position = image.getIndex() * variants + variant;
+		ByteBuffer target = slice(position);
+		Mat resized = resizeToShape(data);
+		if (format.getLayout() == TensorFormat.Layout.UINT8_HWC) {
+			Mat array = new Mat(format.getHeight(), format.getWidth(), CV_8UC3, new BytePointer(target));
+			toRgb(resized, array);
+			array.close();
+		} else {
+			Mat rgb = scratch.get(1, format.getHeight(), format.getWidth(), CV_8UC3);
+			toRgb(resized, rgb);
+			Mat scaled = scratch.get(2, format.getHeight(), format.getWidth(), CV_32FC3);
+			rgb.convertTo(scaled, CV_32F, 1.0 / 255, 0);
+			// Each channel plane of the array gets one channel of the image
+			long planeBytes = (long) format.getHeight() * format.getWidth() * 4;
+			MatVector planes = new MatVector(TensorFormat.CHANNELS);
+			for (int c = 0; c < TensorFormat.CHANNELS; c++) {
+				target.position((int) (c * planeBytes));
+				planes.put(c, new Mat(format.getHeight(), format.getWidth(), CV_32FC1, new BytePointer(target.slice())));
+			}
+			split(scaled, planes);
+			for (int c = 0; c < TensorFormat.CHANNELS; c++) {
+				planes.get(c).close();
+			}
+			planes.close();
+		}
+		synchronized (this) {
+			count = Math.max(count, position + 1);
+			index.write(position + "\t" + image.getFile().getPath() + "\t" + variant + "\n");
+		}
+		return imageBytes;
+	}
+
+	@Override
+	public boolean isBesideSource() {
+		return false;
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		index.flush();
+	}
+
+	/**
+	 * Returns the part of the mapped file holding the image at the position,
+	 * mapping a further chunk of the file if needed.
+	 */
+	private ByteBuffer slice(long position) throws IOException {
+		int chunk = (int) (position / imagesPerChunk);
+		MappedByteBuffer mapped;
+		synchronized (this) {
+			while (chunks.size() <= chunk) {
+				chunks.add(null);
+			}
+			mapped = chunks.get(chunk);
+			if (mapped == null) {
+				long start = HEADER_BYTES + (long) chunk * imagesPerChunk * imageBytes;
+				mapped = file.getChannel().map(MapMode.READ_WRITE, start, imagesPerChunk * imageBytes);
+				chunks.set(chunk, mapped);
+			}
+		}
+		ByteBuffer slice = mapped.duplicate();
+		slice.position((int) (position % imagesPerChunk * imageBytes));
+		slice.limit((int) (slice.position() + imageBytes));
+		return slice.slice();
+	}
+
+	private Mat resizeToShape(Mat data) {
+		if (data.rows() == format.getHeight() && data.cols() == format.getWidth()) {
+			return data;
+		}
+		Mat resized = scratch.get(0, format.getHeight(), format.getWidth(), data.type());
+		boolean shrink = data.rows() > format.getHeight() && data.cols() > format.getWidth();
+		resize(data, resized, new Size(format.getWidth(), format.getHeight()), 0, 0,
+				shrink ? INTER_AREA : INTER_LINEAR);
+		return resized;
+	}
+
+	/**
+	 * Converts the image to 8 bit RGB.
+	 * 
+	 * @param image
+	 *            The image with one, three or four channels.
+	 * @param rgb
+	 *            Receives the converted image.
+	 */
+	private void toRgb(Mat image, Mat rgb) {
+		Mat bytes = image;
+		if (image.depth() != CV_8U) {
+			bytes = new Mat();
+			image.convertTo(bytes, CV_8U, image.depth() == CV_16U ? 1.0 / 257 : 1, 0);
+		}
+		int channels = bytes.channels();
+		cvtColor(bytes, rgb, channels == 1 ? COLOR_GRAY2RGB : channels == 4 ? COLOR_BGRA2RGB : COLOR_BGR2RGB);
+		if (bytes != image) {
+			bytes.close();
+		}
+	}
+
+	/**
+	 * Writes the header for the final number of images, cuts the file to
+	 * their size and closes the sidecar file.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			for (MappedByteBuffer mapped : chunks) {
+				if (mapped != null) {
+					mapped.force();
+				}
+			}
+			chunks.clear();
+			file.seek(0);
+			file.write(createHeader());
+			file.setLength(HEADER_BYTES + count * imageBytes);
+		} finally {
+			try {
+				file.close();
+			} finally {
+				index.close();
+			}
+		}
+	}
+
+	private byte[] createHeader() {
+		String dict = "{'descr': '" + format.getLayout().getDescr() + "', 'fortran_order': False, 'shape': (" + count
+				+ ", " + format.getImageShape() + "), }";
+		StringBuilder header = new StringBuilder(dict);
+		while (header.length() < HEADER_BYTES - 11) {
+			header.append(' ');
+		}
+		header.append('\n');
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put((byte) 0x93).put("NUMPY".getBytes(StandardCharsets.US_ASCII)).put((byte) 1).put((byte) 0);
+		buffer.putShort((short) (HEADER_BYTES - 10));
+		buffer.put(header.toString().getBytes(StandardCharsets.US_ASCII));
+		return buffer.array();
+	}
+}
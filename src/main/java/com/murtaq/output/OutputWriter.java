@@ -0,0 +1,43 @@
+package com.murtaq.output;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+
+import com.murtaq.main.Image;
+
+/**
+ * Stores the transformed images. Implementations must allow multiple encode
+ * threads to write at once. After a flush, all images written before are
+ * readable even if the process dies.
+ */
+public interface OutputWriter extends Closeable, Flushable {
+
+	/**
+	 * Encodes and stores a transformed image.
+	 * 
+	 * @param image
+	 *            The source image.
+	 * @param variant
+	 *            The variant of the image that was generated.
+	 * @param name
+	 *            The file name of the output. Its extension selects the
+	 *            encoding.
+	 * @param data
+	 *            The transformed image data.
+	 * @return The number of bytes written.
+	 * @throws IOException
+	 *             when the image can't be encoded or written.
+	 */
+	long write(Image image, int variant, String name, Mat data) throws IOException;
+
+	/**
+	 * Tells whether the outputs are stored next to their source images,
+	 * because no target directory was given.
+	 * 
+	 * @return Whether the outputs are stored next to the source images.
+	 */
+	boolean isBesideSource();
+}
@@ -0,0 +1,253 @@
+package com.murtaq.output;
+
+import static org.bytedeco.javacpp.opencv_imgcodecs.imencode;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.opencv_core.Mat;
+
+import com.murtaq.main.Image;
+
+/**
+ * Appends the encoded images to large tar files (shards) instead of writing
+ * each image to its own file. A shard is closed and the next one started once
+ * it would exceed the maximum shard size. Each record is named after the
+ * relative target path and file name of the image, so the shards can be
+ * unpacked with any tar tool to get the same tree as with file output.
+ * <p>
+ * Next to each shard, an index file lists the name, the offset of the data
+ * and the size of each record, one record per line separated by tabs, which
+ * allows reading single images without scanning the shard.
+ */
+public class TarShardWriter implements OutputWriter {
+
+	private static final int BLOCK = 512;
+	private static final int NAME_LENGTH = 100;
+
+	private final File directory;
+	private final long maxShardBytes;
+	private final EncoderSettings settings;
+	private final long mtime = System.currentTimeMillis() / 1000;
+
+	private int shardIndex = -1;
+	private FileChannel shard;
+	private Writer index;
+	private long shardPosition;
+
+	/**
+	 * Creates a new writer. The first shard is created with the first image.
+	 * 
+	 * @param directory
+	 *            The directory the shards are written to.
+	 * @param maxShardBytes
+	 *            The size at which the next shard is started. Single images
+	 *            larger than this get a shard of their own.
+	 * @param keepExisting
+	 *            Whether shards already in the directory are kept, numbering
+	 *            the new shards after them. Otherwise they are overwritten.
+	 * @param settings
+	 *            The options of the encoders.
+	 */
+	public TarShardWriter(File directory, long maxShardBytes, boolean keepExisting, EncoderSettings settings) {
+		if (maxShardBytes < 1) {
+			throw new IllegalArgumentException("The shard size must be positive.");
+		}
+		this.directory = directory;
+		this.maxShardBytes = maxShardBytes;
+		this.settings = settings;
+		if (keepExisting) {
+			String[] names = directory.list();
+			for (String name : names == null ? new String[0] : names) {
+				if (name.matches("shard-\\d+\\.tar")) {
+					shardIndex = Math.max(shardIndex, Integer.parseInt(name.substring(6, name.length() - 4)));
+				}
+			}
+		}
+	}
+
+	@Override
+	public long write(Image image, int variant, String name, Mat data) throws IOException {
+		String key = image.getTargetPath().isEmpty() ? name
+				: image.getTargetPath().replace(File.separatorChar, '/') + "/" + name;
+		BytePointer encoded = new BytePointer();
+		try {
+			// Encoding takes most of the time, so it's done before taking the
+			// lock of the shard
+			int[] params = settings.getParams(name);
+			String extension = name.substring(name.lastIndexOf('.'));
+			if (params.length == 0 ? !imencode(extension, data, encoded)
+					: !imencode(extension, data, encoded, new IntPointer(params))) {
+				throw new IOException("Couldn't encode image: " + key);
+			}
+			return append(key, encoded.asByteBuffer());
+		} finally {
+			encoded.deallocate();
+		}
+	}
+
+	@Override
+	public boolean isBesideSource() {
+		return false;
+	}
+
+	/**
+	 * Appends a record to the current shard, starting a new shard if the
+	 * record doesn't fit into it.
+	 * 
+	 * @param key
+	 *            The name of the record.
+	 * @param data
+	 *            The content of the record.
+	 * @return The size of the record content.
+	 * @throws IOException
+	 *             when the shard or its index can't be written.
+	 */
+	private synchronized long append(String key, ByteBuffer data) throws IOException {
+		ByteBuffer header = createHeader(key, data.remaining());
+		long recordBytes = header.remaining() + padded(data.remaining());
+		if (shard == null || shardPosition > 0 && shardPosition + recordBytes + 2 * BLOCK > maxShardBytes) {
+			nextShard();
+		}
+		long size = data.remaining();
+		writeFully(header);
+		long offset = shardPosition;
+		writeFully(data);
+		writeFully(ByteBuffer.allocate((int) (padded(size) - size)));
+		index.write(key + "\t" + offset + "\t" + size + "\n");
+		return size;
+	}
+
+	private void nextShard() throws IOException {
+		finishShard();
+		shardIndex++;
+		String name = String.format(Locale.ROOT, "shard-%05d", shardIndex);
+		shard = FileChannel.open(new File(directory, name + ".tar").toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		index = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(new File(directory, name + ".idx")),
+						StandardCharsets.UTF_8));
+		shardPosition = 0;
+	}
+
+	/**
+	 * Terminates the current shard with the two empty blocks marking the end of
+	 * a tar archive and closes it.
+	 */
+	private void finishShard() throws IOException {
+		if (shard == null) {
+			return;
+		}
+		try {
+			writeFully(ByteBuffer.allocate(2 * BLOCK));
+			shard.close();
+		} finally {
+			index.close();
+			shard = null;
+			index = null;
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			shardPosition += shard.write(buffer);
+		}
+	}
+
+	/**
+	 * Flushes the index of the current shard. The records of the shard itself
+	 * are written without buffering.
+	 */
+	@Override
+	public synchronized void flush() throws IOException {
+		if (index != null) {
+			index.flush();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		finishShard();
+	}
+
+	/**
+	 * Creates the ustar header of a record. Names that don't fit into the
+	 * header are stored in a preceding pax extended header.
+	 */
+	private ByteBuffer createHeader(String key, long size) {
+		byte[] name = key.getBytes(StandardCharsets.UTF_8);
+		if (name.length <= NAME_LENGTH) {
+			return ByteBuffer.wrap(headerBlock(name, size, '0'));
+		}
+		// The length of a pax record includes the digits of the length itself
+		String record = " path=" + key + "\n";
+		int length = record.getBytes(StandardCharsets.UTF_8).length;
+		int digits = Integer.toString(length).length();
+		if (Integer.toString(length + digits).length() > digits) {
+			digits++;
+		}
+		byte[] pax = ((length + digits) + record).getBytes(StandardCharsets.UTF_8);
+		byte[] shortName = ("PaxHeaders/" + (key.hashCode() & 0x7FFFFFFF)).getBytes(StandardCharsets.UTF_8);
+		ByteBuffer header = ByteBuffer.allocate(BLOCK + (int) padded(pax.length) + BLOCK);
+		header.put(headerBlock(shortName, pax.length, 'x'));
+		header.put(pax);
+		header.position(BLOCK + (int) padded(pax.length));
+		byte[] truncated = new byte[NAME_LENGTH];
+		System.arraycopy(name, name.length - NAME_LENGTH, truncated, 0, NAME_LENGTH);
+		header.put(headerBlock(truncated, size, '0'));
+		header.flip();
+		return header;
+	}
+
+	private byte[] headerBlock(byte[] name, long size, char type) {
+		byte[] block = new byte[BLOCK];
+		System.arraycopy(name, 0, block, 0, name.length);
+		putOctal(block, 100, 8, 0644);
+		putOctal(block, 108, 8, 0);
+		putOctal(block, 116, 8, 0);
+		putOctal(block, 124, 12, size);
+		putOctal(block, 136, 12, mtime);
+		block[156] = (byte) type;
+		System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, block, 257, 6);
+		block[263] = '0';
+		block[264] = '0';
+		// The checksum is calculated with the checksum field set to spaces
+		for (int i = 148; i < 156; i++) {
+			block[i] = ' ';
+		}
+		long checksum = 0;
+		for (byte b : block) {
+			checksum += b & 0xFF;
+		}
+		putOctal(block, 148, 7, checksum);
+		return block;
+	}
+
+	/*
+	 * Writes the value as zero padded octal number terminated by a null byte.
+	 */
+	private static void putOctal(byte[] block, int offset, int length, long value) {
+		String octal = Long.toOctalString(value);
+		int digits = length - 1;
+		for (int i = 0; i < digits; i++) {
+			int from = octal.length() - digits + i;
+			block[offset + i] = (byte) (from < 0 ? '0' : octal.charAt(from));
+		}
+		block[offset + digits] = 0;
+	}
+
+	private static long padded(long size) {
+		return (size + BLOCK - 1) / BLOCK * BLOCK;
+	}
+}
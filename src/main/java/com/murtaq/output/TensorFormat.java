@@ -0,0 +1,96 @@
+package com.murtaq.output;
+
+/**
+ * The shape and element type of the arrays the images are stored as in a
+ * .npy file.
+ */
+public class TensorFormat {
+
+	/**
+	 * The element type and dimension order of the arrays.
+	 */
+	public enum Layout {
+
+		/**
+		 * Unsigned bytes in height, width, channel order, as stored by OpenCV.
+		 */
+		UINT8_HWC("|u1", 1),
+
+		/**
+		 * 32 bit floats scaled to [0, 1] in channel, height, width order, as
+		 * expected by most training frameworks.
+		 */
+		FLOAT32_CHW("<f4", 4);
+
+		private final String descr;
+		private final int elementSize;
+
+		private Layout(String descr, int elementSize) {
+			this.descr = descr;
+			this.elementSize = elementSize;
+		}
+
+		/**
+		 * Returns the numpy type description of the elements.
+		 * 
+		 * @return The type description.
+		 */
+		public String getDescr() {
+			return descr;
+		}
+
+		public int getElementSize() {
+			return elementSize;
+		}
+	}
+
+	/**
+	 * The images are always stored with three channels in RGB order.
+	 */
+	public static final int CHANNELS = 3;
+
+	private final int height, width;
+	private final Layout layout;
+
+	public TensorFormat(int height, int width, Layout layout) {
+		if (height < 1 || width < 1) {
+			throw new IllegalArgumentException("The tensor shape must be positive.");
+		}
+		this.height = height;
+		this.width = width;
+		this.layout = layout;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public Layout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * Returns the number of bytes a single image takes.
+	 * 
+	 * @return The size of an image in bytes.
+	 */
+	public long getImageBytes() {
+		return (long) height * width * CHANNELS * layout.getElementSize();
+	}
+
+	/**
+	 * Returns the numpy shape of a single image.
+	 * 
+	 * @return The shape without the leading image dimension, i.e. "224, 224, 3".
+	 */
+	String getImageShape() {
+		if (layout == Layout.FLOAT32_CHW) {
+			return CHANNELS + ", " + height + ", " + width;
+		}
+		return height + ", " + width + ", " + CHANNELS;
+	}
+}
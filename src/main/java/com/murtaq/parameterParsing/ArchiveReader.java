@@ -0,0 +1,85 @@
+package com.murtaq.parameterParsing;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the regular files stored in an archive one after another, without
+ * extracting the archive.
+ */
+abstract class ArchiveReader implements Closeable {
+
+	/**
+	 * Tells whether a file is an archive images can be read from, judged by
+	 * its extension.
+	 * 
+	 * @param file
+	 *            The file to test.
+	 * @return Whether the file is a zip, tar or gzip compressed tar archive.
+	 */
+	static boolean isArchive(File file) {
+		String name = file.getName().toLowerCase(Locale.ROOT);
+		return name.endsWith(".zip") || name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz");
+	}
+
+	/**
+	 * Opens an archive for reading.
+	 * 
+	 * @param archive
+	 *            The archive, which must have been accepted by
+	 *            {@link #isArchive(File)}.
+	 * @return The reader.
+	 * @throws IOException
+	 *             when the archive can't be opened.
+	 */
+	static ArchiveReader open(File archive) throws IOException {
+		String name = archive.getName().toLowerCase(Locale.ROOT);
+		if (name.endsWith(".zip")) {
+			return new ZipArchiveReader(archive);
+		}
+		InputStream in = new BufferedInputStream(new FileInputStream(archive), 1 << 16);
+		try {
+			if (!name.endsWith(".tar")) {
+				in = new GZIPInputStream(in, 1 << 16);
+			}
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+		return new TarArchiveReader(in);
+	}
+
+	/**
+	 * Advances to the next regular file of the archive. Directories and other
+	 * special entries are skipped.
+	 * 
+	 * @return The path of the file inside the archive, separated by '/', or
+	 *         null if the end of the archive was reached.
+	 * @throws IOException
+	 *             when the archive can't be read.
+	 */
+	abstract String nextEntry() throws IOException;
+
+	/**
+	 * Returns the size of the current file.
+	 * 
+	 * @return The size in bytes or -1, if it is unknown.
+	 */
+	abstract long getEntrySize();
+
+	/**
+	 * Returns a stream of the content of the current file. The stream becomes
+	 * invalid with the next call of {@link #nextEntry()}.
+	 * 
+	 * @return The content of the current file.
+	 * @throws IOException
+	 *             when the archive can't be read.
+	 */
+	abstract InputStream getEntryStream() throws IOException;
+}
@@ -0,0 +1,298 @@
+package com.murtaq.parameterParsing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.murtaq.util.ImageFile;
+import com.murtaq.util.ImageFormat;
+
+/**
+ * Lazily walks the source locations and provides all image files found there
+ * together with their detected format.
+ * Directories are read entry by entry while iterating, so the first images are
+ * available right away and the memory used only depends on the depth of the
+ * directory tree, not on the number of files in it.
+ * <p>
+ * Archives are searched like directories: the files in their root are always
+ * provided, the files in their subdirectories only when searching
+ * recursively. Archives inside a directory are only opened when searching
+ * recursively. The content of the images in an archive is read right away,
+ * as the entries of an archive can only be read in order.
+ */
+class ImageFileIterator implements Iterator<ImageFile> {
+
+	private final ImageParser imageParser;
+	private final Iterator<File> roots;
+	private final boolean recursive;
+
+	/*
+	 * The open directories from the current one up to the root directory.
+	 */
+	private final Deque<DirectoryStream<Path>> openDirs = new ArrayDeque<DirectoryStream<Path>>();
+	private final Deque<Iterator<Path>> dirEntries = new ArrayDeque<Iterator<Path>>();
+
+	private ShardFilter shard = new ShardFilter(0, 1, null);
+	private ArchiveReader archive;
+	private File archiveFile;
+
+	private ImageFile nextFile;
+
+	/**
+	 * Creates a new iterator.
+	 * 
+	 * @param imageParser
+	 *            The parser detecting the format of the files.
+	 * @param roots
+	 *            The image files and directories to provide the images from.
+	 * @param recursive
+	 *            Whether subdirectories of the directories are searched.
+	 */
+	ImageFileIterator(ImageParser imageParser, List<File> roots, boolean recursive) {
+		this.imageParser = imageParser;
+		this.roots = roots.iterator();
+		this.recursive = recursive;
+	}
+
+	/**
+	 * Restricts the provided images to a shard of all images. Files of other
+	 * shards are skipped before their format is detected.
+	 * 
+	 * @param shard
+	 *            The filter selecting the images of the shard.
+	 */
+	void setShardFilter(ShardFilter shard) {
+		this.shard = shard;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (nextFile == null) {
+			nextFile = findNext();
+		}
+		return nextFile != null;
+	}
+
+	@Override
+	public ImageFile next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		ImageFile file = nextFile;
+		nextFile = null;
+		return file;
+	}
+
+	/**
+	 * Advances the walk to the next image file.
+	 * 
+	 * @return The next image file or null, if all locations were searched.
+	 */
+	private ImageFile findNext() {
+		while (true) {
+			if (archive != null) {
+				ImageFile entry = nextArchiveImage();
+				if (entry != null) {
+					return entry;
+				}
+				continue;
+			}
+			if (dirEntries.isEmpty()) {
+				if (!roots.hasNext()) {
+					return null;
+				}
+				File root = roots.next();
+				if (!root.isDirectory() && ArchiveReader.isArchive(root)) {
+					openArchive(root);
+					continue;
+				}
+				if (!root.isDirectory()) {
+					if (shard.accepts(root)) {
+						return new ImageFile(root, imageParser.detectFormat(root));
+					}
+					continue;
+				}
+				openDir(root.toPath());
+				continue;
+			}
+			if (!dirEntries.peek().hasNext()) {
+				closeDir();
+				continue;
+			}
+			Path entry = dirEntries.peek().next();
+			File file = entry.toFile();
+			if (file.isDirectory()) {
+				if (recursive) {
+					openDir(entry);
+				}
+			} else if (ArchiveReader.isArchive(file)) {
+				if (recursive) {
+					openArchive(file);
+				}
+			} else if (shard.accepts(file)) {
+				ImageFormat format = imageParser.detectFormat(file);
+				if (format != null) {
+					return new ImageFile(file, format);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the entries of the open archive up to the next image.
+	 * 
+	 * @return The next image or null, if the archive was searched completely
+	 *         and closed.
+	 */
+	private ImageFile nextArchiveImage() {
+		try {
+			String name;
+			while ((name = archive.nextEntry()) != null) {
+				String entry = normalizeEntry(name);
+				if (entry == null) {
+					System.out.println("Skipped entry \"" + name + "\" of archive \"" + archiveFile.getAbsolutePath()
+							+ "\", as it points outside of the archive.");
+				} else if ((recursive || entry.indexOf('/') < 0) && shard.accepts(archiveFile, entry)) {
+					ImageFile image = readArchiveImage(entry);
+					if (image != null) {
+						return image;
+					}
+				}
+			}
+		} catch (IOException e) {
+			System.out.println("Couldn't read archive \"" + archiveFile.getAbsolutePath() + "\": " + e.getMessage());
+		}
+		closeArchive();
+		return null;
+	}
+
+	/**
+	 * Reads the current entry of the archive, if it is an image.
+	 * 
+	 * @param entry
+	 *            The normalized path of the entry.
+	 * @return The image or null, if the entry is no image.
+	 * @throws IOException
+	 *             when the archive can't be read.
+	 */
+	private ImageFile readArchiveImage(String entry) throws IOException {
+		InputStream in = archive.getEntryStream();
+		byte[] header = new byte[ImageFormat.SIGNATURE_LENGTH];
+		int length = imageParser.isTrustingExtensions() ? 0 : read(in, header, 0, header.length);
+		ImageFormat format = imageParser.detectFormat(entry, header, length);
+		if (format == null) {
+			return null;
+		}
+		long size = archive.getEntrySize();
+		if (size > Integer.MAX_VALUE - 8) {
+			System.out.println("Skipped entry \"" + entry + "\" of archive \"" + archiveFile.getAbsolutePath()
+					+ "\", as it is too large.");
+			return null;
+		}
+		byte[] content = Arrays.copyOf(header, size >= length ? (int) size : Math.max(length, 1 << 16));
+		int total = length;
+		while (total < content.length || size < 0) {
+			if (total == content.length) {
+				content = Arrays.copyOf(content, content.length * 2);
+			}
+			int read = read(in, content, total, content.length - total);
+			if (read == 0) {
+				break;
+			}
+			total += read;
+		}
+		return new ImageFile(archiveFile, entry, format, total == content.length ? content : Arrays.copyOf(content, total));
+	}
+
+	/**
+	 * Reads from the stream until the requested bytes or the end of the stream
+	 * are reached.
+	 * 
+	 * @return The number of bytes read.
+	 */
+	private static int read(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+		int total = 0;
+		while (total < length) {
+			int read = in.read(buffer, offset + total, length - total);
+			if (read < 0) {
+				break;
+			}
+			total += read;
+		}
+		return total;
+	}
+
+	/**
+	 * Removes leading slashes and "." segments from the path of an archive
+	 * entry. As the path becomes part of the target path of the image, paths
+	 * leading outside of the archive are rejected.
+	 * 
+	 * @param name
+	 *            The path of the entry.
+	 * @return The normalized path or null, if the path contains "..".
+	 */
+	static String normalizeEntry(String name) {
+		StringBuilder normalized = new StringBuilder();
+		for (String segment : name.replace('\\', '/').split("/")) {
+			if (segment.isEmpty() || segment.equals(".")) {
+				continue;
+			}
+			if (segment.equals("..")) {
+				return null;
+			}
+			if (normalized.length() > 0) {
+				normalized.append('/');
+			}
+			normalized.append(segment);
+		}
+		return normalized.length() > 0 ? normalized.toString() : null;
+	}
+
+	private void openArchive(File file) {
+		try {
+			archive = ArchiveReader.open(file);
+			archiveFile = file;
+		} catch (IOException e) {
+			System.out.println("Couldn't read archive \"" + file.getAbsolutePath() + "\": " + e.getMessage());
+		}
+	}
+
+	private void closeArchive() {
+		try {
+			archive.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			archive = null;
+			archiveFile = null;
+		}
+	}
+
+	private void openDir(Path dir) {
+		try {
+			DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+			openDirs.push(stream);
+			dirEntries.push(stream.iterator());
+		} catch (IOException e) {
+			System.out.println("Couldn't read directory \"" + dir.toAbsolutePath() + "\": " + e.getMessage());
+		}
+	}
+
+	private void closeDir() {
+		dirEntries.pop();
+		try {
+			openDirs.pop().close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
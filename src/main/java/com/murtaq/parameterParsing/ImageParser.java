@@ -1,17 +1,30 @@
 package com.murtaq.parameterParsing;
 
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.murtaq.util.ImageFormat;
+
 /**
- * Reads locations of all image files from the source directory on the disk into
- * memory.
+ * Validates the locations of the image files given in the command line.
+ * Besides image files and directories, zip and tar archives are accepted as
+ * locations, which are searched like directories.
  */
 class ImageParser {
 
+	private final boolean trustExtensions;
+
+	/**
+	 * Creates a new parser.
+	 * 
+	 * @param trustExtensions
+	 *            Whether image files are recognized by their extension only.
+	 */
+	ImageParser(boolean trustExtensions) {
+		this.trustExtensions = trustExtensions;
+	}
+
 	/**
 	 * Creates a list of files from the given paths representing the location of
 	 * the images to be transformed.
@@ -36,73 +49,26 @@ class ImageParser {
 	}
 
 	/**
-	 * Tests whether the given path points to a directory and searches all image
-	 * files if the test succeeds.
-	 * 
-	 * @param filepath
-	 *            The path to be tested and searched.
-	 * @param recursive
-	 *            Whether the search is recursive.
-	 * @return The list of image files that were found.
-	 * @throws ParamParseException
-	 *             when the filepath parameter does not point to a directory.
-	 */
-	List<File> parseDirectory(String filepath, boolean recursive) throws ParamParseException {
-		File file = readImageOrDir(filepath);
-		if (!file.isDirectory()) {
-			throw new ParamParseException(
-					"ParseDirectory method received non directory \"" + file.getAbsolutePath() + "\" as input.");
-		}
-		return parseDirectoryFromFile(file, recursive);
-	}
-
-	/**
-	 * Searches the given directory for all image files.
-	 * 
-	 * @param sourceDir
-	 *            The directory to be searched.
-	 * @param recursive
-	 *            Whether the search is recursive.
-	 * @return The list of images in the directory.
-	 */
-	private List<File> parseDirectoryFromFile(File sourceDir, boolean recursive) {
-		List<File> parsedImages = new ArrayList<File>();
-		List<File> parsedSubdirs = new ArrayList<File>();
-		File[] sourceFiles = sourceDir.listFiles();
-		if (sourceFiles == null) return parsedImages;
-		for (File fileInSource : sourceFiles) {
-			if (recursive && fileInSource.isDirectory()) {
-				parsedSubdirs.add(fileInSource);
-			} else if (!fileInSource.isDirectory() && isImageFile(fileInSource)) {
-				parsedImages.add(fileInSource);
-			}
-		}
-		for (File dirToParse : parsedSubdirs) {
-			parsedImages.addAll(parseDirectoryFromFile(dirToParse, recursive));
-		}
-		return parsedImages;
-	}
-
-	/**
-	 * Returns a file object which points to either image file or directory and
-	 * is located at the given path.
+	 * Returns a file object which points to either image file, archive or
+	 * directory and is located at the given path.
 	 * 
 	 * @param filepath
 	 *            The path to be tested.
 	 * @return The file object.
 	 * @throws ParamParseException
-	 *             when the path points to neither image file nor directory.
+	 *             when the path points to neither image file, archive nor
+	 *             directory.
 	 */
 	File readImageOrDir(String filepath) throws ParamParseException {
 		File newFile = new File(filepath);
 		if (!newFile.exists()) {
 			throw new ParamParseException("No file was found at location \"" + newFile.getAbsolutePath() + "\".");
 		}
-		if (newFile.isDirectory() || isImageFile(newFile)) {
+		if (newFile.isDirectory() || ArchiveReader.isArchive(newFile) || isImageFile(newFile)) {
 			return newFile;
 		}
 		throw new ParamParseException("The file at location \"" + newFile.getAbsolutePath()
-				+ "\" was neither recognized as image file nor as directory.");
+				+ "\" was neither recognized as image file, archive nor as directory.");
 	}
 
 	/**
@@ -113,16 +79,45 @@ class ImageParser {
 	 * @return Whether the file object points to an image file.
 	 */
 	boolean isImageFile(File file) {
-		String type = "";
-		try {
-			String filetype = Files.probeContentType(file.toPath());
-			type = filetype != null ? filetype.split("/")[0] : "";
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		if (type.equals("image")) {
-			return true;
-		}
-		return false;
+		return detectFormat(file) != null;
+	}
+
+	/**
+	 * Determines the format of an image file, either by its first bytes or
+	 * only by its extension.
+	 * 
+	 * @param file
+	 *            The object to test.
+	 * @return The format or null, if the file is no supported image.
+	 */
+	ImageFormat detectFormat(File file) {
+		return trustExtensions ? ImageFormat.fromExtension(file) : ImageFormat.detect(file);
+	}
+
+	/**
+	 * Tells whether the format of an archive entry can be determined by its
+	 * name, so that the content of other entries doesn't have to be read.
+	 * 
+	 * @return Whether formats are determined by the extension only.
+	 */
+	boolean isTrustingExtensions() {
+		return trustExtensions;
+	}
+
+	/**
+	 * Determines the format of an archive entry, either by its first bytes or
+	 * only by the extension of its name.
+	 * 
+	 * @param name
+	 *            The name of the entry.
+	 * @param header
+	 *            The first bytes of the entry. Not used when trusting the
+	 *            extensions.
+	 * @param length
+	 *            The number of bytes in the header.
+	 * @return The format or null, if the entry is no supported image.
+	 */
+	ImageFormat detectFormat(String name, byte[] header, int length) {
+		return trustExtensions ? ImageFormat.fromExtension(name) : ImageFormat.detect(header, length);
 	}
 }
@@ -2,7 +2,13 @@ package com.murtaq.parameterParsing;
 
 import java.io.File;
 
+import com.murtaq.output.EncoderSettings;
+import com.murtaq.output.TensorFormat;
+import com.murtaq.transformation.Parallelism;
 import com.murtaq.transformations.ITransform;
+import com.murtaq.transformations.grid.GridTransform;
+import com.murtaq.transformations.grid.WarpAccuracy;
+import com.murtaq.transformations.grid.WarpBackend;
 
 /**
  * Represents a parameter, storing its name, description, command line arguments
@@ -10,20 +16,85 @@ import com.murtaq.transformations.ITransform;
  */
 public enum Parameter {
 
-	SOURCE("The distortion source file(s). Can be one or more image files or a single directory.",
+	SOURCE("The distortion source file(s). Can be one or more image files or archives or a single directory. Zip, tar and gzip compressed tar archives are searched like directories without extracting them. Images in archives need a target directory.",
 			new String[] { "-source", "-s" }, File.class),
 
 	PARSED_IMAGES("Used to provide data type and put functionality for ParameterManager (<- only for documentation).",
-			new String[] {}, File[].class),
+			new String[] {}, ImageFileIterator.class),
 
 	TARGET("The target file. Can be an image file or directory.", new String[] { "-target", "-t" }, File.class),
 
 	TRANSFORMATIONS("The transformations to apply on the image file.", new String[] { "-transformations", "-tf" },
 			ITransform[].class),
 
+	VARIANTS("The number of transformed variants generated from each image (i.e. 10). Each image is read once and transformed once per variant with separate random distortions. With more than one variant the outputs are named name_tf0 to name_tfN-1. Defaults to 1.",
+			new String[] { "-variants", "-v" }, Integer.class),
+
+	SEED("The seed for the random transformations (i.e. 42). Makes the results reproducible, regardless of the number of threads. By default each run uses different random values.",
+			new String[] { "-seed", "-sd" }, long[].class),
+
 	RECURSION("Enables recursive searching for image files, if source file is directory.", new String[] { "-recursive", "-r" },
 			Boolean.class),
 
+	TRUST_EXTENSIONS("Recognizes image files by their file extension only instead of reading their first bytes. Speeds up the search on slow file systems for datasets with reliable extensions.",
+			new String[] { "-trustExtensions", "-te" }, Boolean.class),
+
+	THREADS("The number of worker threads for reading, transforming and writing images (i.e. 2 8 2). A single value is used for all three stages. Defaults to \"1\", which processes the images one after another.",
+			new String[] { "-threads", "-th" }, int[].class),
+
+	PARALLELISM("Whether the transform threads work on different images (\"inter\") or together on bands of the same image (\"intra\"). Intra image parallelism suits very large images. Defaults to \"inter\".",
+			new String[] { "-parallelism", "-p" }, Parallelism.class),
+
+	WARP_BACKEND("The implementation used to warp images in grid transformations: \"java\" interpolates every pixel in Java, \"remap\" uses the native OpenCV remap function and caches its maps per image size when the distortion does not change between images. Defaults to \"java\".",
+			new String[] { "-warpBackend", "-wb" }, WarpBackend.class),
+
+	WARP_ACCURACY("How exactly the java warp backend calculates pixels: \"exact\" in double precision, \"fast\" in fixed-point arithmetic with 1/1024 pixel precision and integer weights, \"vector\" with the Vector API in single precision, which needs JDK 17 and --add-modules jdk.incubator.vector. Fast and vector pixels may differ from exact ones by one. Defaults to \"exact\".",
+			new String[] { "-warpAccuracy", "-wa" }, WarpAccuracy.class),
+
+	TILE_SIZE("Warps images larger than the given edge length in pixels (i.e. 4096) tile by tile in grid transformations. The intermediate delta matrices then only cover a tile, which bounds their memory for very large images. The results are the same as without tiles. Can't be combined with -fuse.",
+			new String[] { "-tileSize", "-tl" }, Integer.class),
+
+	DISTORTION_CACHE("The limits of the cache for generated distortions of each random transformation: the maximum number of cached image sizes and optionally the maximum size in megabytes (i.e. 16 256). Each image size takes one entry per variant. Defaults to "
+			+ GridTransform.DEFAULT_CACHED_SIZES + " image sizes and " + GridTransform.DEFAULT_CACHE_BYTES / (1024 * 1024)
+			+ " megabytes.",
+			new String[] { "-distortionCache", "-dc" }, long[].class),
+
+	FUSE("Combines consecutive geometric transformations (i.e. random, sine and flip) into a single resampling pass, so that each image is sampled only once.",
+			new String[] { "-fuse", "-f" }, Boolean.class),
+
+	MAX_NATIVE_MEMORY("The maximum native memory in megabytes used by the images in flight, their intermediate results, the scratch matrices of the transformations and the cached distortions and maps (i.e. 512). Reading further images waits until enough memory was released. The memory of JPEG, PNG, BMP and PNM images is reserved before decoding them, TIFF and WebP images may exceed the limit by their decoded size. Unlimited by default.",
+			new String[] { "-maxNativeMemory", "-mem" }, Long.class),
+
+	SHARD("Processes only one part of the source images, so that a run can be split over several machines (i.e. 2/8 for the third of eight parts, counting from 0). The images are assigned by a hash of their path relative to the source location, so each machine gets a disjoint part that stays the same in reruns.",
+			new String[] { "-shard", "-sh" }, int[].class),
+
+	SHARD_SIZE("Appends the transformed images to tar files in the target directory instead of writing a file per image. A new tar file is started once one reaches the given size in MB (i.e. 1024). Each tar file gets an index file listing the offset and size of each image.",
+			new String[] { "-shardSize", "-ss" }, Long.class),
+
+	TARGET_SIZE("The height and width all images are resized to before they are transformed. Large JPEG images are already shrunk while decoding, which is much faster than decoding them at full size.",
+			new String[] { "-targetSize", "-ts" }, int[].class),
+
+	FORMAT("The format all transformed images are written in, given as file extension (i.e. png or jpg). By default each image keeps the format of its source image.",
+			new String[] { "-format", "-fm" }, String.class),
+
+	ENCODER("Options of the image encoders as key=value pairs (i.e. pngCompression=1 jpegQuality=90). Supported are jpegQuality (0-100), jpegOptimize (0 or 1), jpegProgressive (0 or 1), pngCompression (0-9, lower is faster), pngStrategy (default, filtered, huffman, rle or fixed) and webpQuality (1-100). Options which are not given keep the defaults of OpenCV.",
+			new String[] { "-encoder", "-enc" }, EncoderSettings.class),
+
+	NPY("Stores the transformed images as arrays of the given height and width (i.e. 224 224) in the file images.npy in the target directory instead of encoding them. The images are resized to this shape and converted to RGB. An optional third value selects the element type: \"uint8\" stores bytes in height, width, channel order, \"float32\" stores values from 0 to 1 in channel, height, width order. Defaults to \"uint8\". The file images.tsv lists the source image and variant of each array.",
+			new String[] { "-npy" }, TensorFormat[].class),
+
+	RESUME("Skips the images which were already transformed by a previous, interrupted run into the same target directory. Every run writes the file manifest.tsv to the target directory, listing each output together with the size and modification time of its source and the transformations. Images that changed since, or were transformed differently, are transformed again.",
+			new String[] { "-resume", "-rs" }, Boolean.class),
+
+	PROGRESS("The seconds between two progress lines showing the throughput and the native memory in use (i.e. 30). 0 disables the progress lines. Defaults to 10.",
+			new String[] { "-progress", "-pg" }, Integer.class),
+
+	REPORT("A file the throughput and the latencies of each stage are written to as JSON document at the end of the run.",
+			new String[] { "-report", "-rp" }, File.class),
+
+	PROMETHEUS("A file the metrics of the run are written to in the Prometheus text format, i.e. for the textfile collector of the node exporter. Updated with each progress line.",
+			new String[] { "-prometheus", "-pm" }, File.class),
+
 	HELP("Displays this help.", new String[] { "-help", "-h" }, Boolean.class),
 
 	HELPTF("Displays a list of avaliable transformations and their parameters.", new String[] { "-helpTransformations", "-ht" },
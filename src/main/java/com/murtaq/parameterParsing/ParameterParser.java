@@ -1,19 +1,46 @@
 package com.murtaq.parameterParsing;
 
+import static com.murtaq.parameterParsing.Parameter.DISTORTION_CACHE;
+import static com.murtaq.parameterParsing.Parameter.ENCODER;
+import static com.murtaq.parameterParsing.Parameter.FORMAT;
+import static com.murtaq.parameterParsing.Parameter.FUSE;
 import static com.murtaq.parameterParsing.Parameter.HELP;
 import static com.murtaq.parameterParsing.Parameter.HELPTF;
+import static com.murtaq.parameterParsing.Parameter.MAX_NATIVE_MEMORY;
+import static com.murtaq.parameterParsing.Parameter.PARALLELISM;
+import static com.murtaq.parameterParsing.Parameter.NPY;
 import static com.murtaq.parameterParsing.Parameter.PARSED_IMAGES;
+import static com.murtaq.parameterParsing.Parameter.PROGRESS;
+import static com.murtaq.parameterParsing.Parameter.PROMETHEUS;
 import static com.murtaq.parameterParsing.Parameter.RECURSION;
+import static com.murtaq.parameterParsing.Parameter.REPORT;
+import static com.murtaq.parameterParsing.Parameter.RESUME;
+import static com.murtaq.parameterParsing.Parameter.SEED;
+import static com.murtaq.parameterParsing.Parameter.SHARD;
+import static com.murtaq.parameterParsing.Parameter.SHARD_SIZE;
 import static com.murtaq.parameterParsing.Parameter.SOURCE;
 import static com.murtaq.parameterParsing.Parameter.TARGET;
+import static com.murtaq.parameterParsing.Parameter.TARGET_SIZE;
+import static com.murtaq.parameterParsing.Parameter.THREADS;
+import static com.murtaq.parameterParsing.Parameter.TILE_SIZE;
 import static com.murtaq.parameterParsing.Parameter.TRANSFORMATIONS;
+import static com.murtaq.parameterParsing.Parameter.TRUST_EXTENSIONS;
+import static com.murtaq.parameterParsing.Parameter.VARIANTS;
+import static com.murtaq.parameterParsing.Parameter.WARP_ACCURACY;
+import static com.murtaq.parameterParsing.Parameter.WARP_BACKEND;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.murtaq.output.EncoderSettings;
+import com.murtaq.output.TensorFormat;
+import com.murtaq.transformation.Parallelism;
 import com.murtaq.transformation.TransformFactory;
 import com.murtaq.transformations.ITransform;
+import com.murtaq.transformations.grid.GridTransform;
+import com.murtaq.transformations.grid.WarpAccuracy;
+import com.murtaq.transformations.grid.WarpBackend;
 
 /**
  * Transforms the command line arguments to Java objects and returns them stored
@@ -26,6 +53,9 @@ public class ParameterParser {
 
 	private ParameterStorage parman;
 
+	private ImageParser imageParser;
+	private boolean archiveSource;
+
 	/**
 	 * Transforms the command line arguments into Java objects and stores them
 	 * in a ParameterManager. May exit the program when user input is incorrect.
@@ -45,9 +75,29 @@ public class ParameterParser {
 			if (isBooleanParameterSet(HELPTF)) {
 				displayTfHelpAndExit();
 			}
+			imageParser = new ImageParser(isBooleanParameterSet(TRUST_EXTENSIONS));
+			initShard();
 			initImageFiles(isBooleanParameterSet(RECURSION));
 			initTarget();
+			initShardSize();
+			initNpy();
+			initEncoder();
+			initTargetSize();
+			initResume();
 			initTransformations();
+			initVariants();
+			initSeed();
+			initThreads();
+			initParallelism();
+			initWarpBackend();
+			initWarpAccuracy();
+			initDistortionCache();
+			parman.putParameter(FUSE, isBooleanParameterSet(FUSE));
+			initTileSize();
+			initMaxNativeMemory();
+			initProgress();
+			initOutputFile(REPORT);
+			initOutputFile(PROMETHEUS);
 		} catch (ParamParseException e) {
 			System.out.println("\nThe following error occurred while parsing parameters:");
 			System.out.println("    " + e.getMessage() + "\n");
@@ -59,8 +109,9 @@ public class ParameterParser {
 	}
 
 	/**
-	 * Reads all contained images at the source location given in the command
-	 * line and stores them in the ParameterManager.
+	 * Prepares the lazy search for all contained images at the source location
+	 * given in the command line and stores it in the ParameterManager. The
+	 * images are found while they are being transformed.
 	 * 
 	 * @param recursive
 	 *            Whether the search in the given location is recursive.
@@ -73,30 +124,68 @@ public class ParameterParser {
 			throw new ParamParseException(
 					"No transformation source file was specified using " + SOURCE.namesString + ". This is always required.");
 		}
-		ImageParser imageParser = new ImageParser();
-		List<File> parsedImageFiles = new ArrayList<File>();
+		List<File> roots = new ArrayList<File>();
 		parman.putParameter(SOURCE, new File(""));
 		if (filepaths.size() == 1) {
 			File parsedFile = imageParser.readImageOrDir(filepaths.get(0));
-			if (parsedFile.isDirectory()) {
+			// The paths inside an archive become the target paths, like
+			// those inside a source directory
+			if (parsedFile.isDirectory() || ArchiveReader.isArchive(parsedFile)) {
 				parman.putParameter(SOURCE, parsedFile);
-				parsedImageFiles = imageParser.parseDirectory(filepaths.get(0), recursive);
-			} else {
-				parsedImageFiles.add(parsedFile);
 			}
+			roots.add(parsedFile);
 		} else {
-			parsedImageFiles = imageParser.parseImageFiles(filepaths);
+			roots = imageParser.parseImageFiles(filepaths);
+		}
+		for (File root : roots) {
+			archiveSource |= !root.isDirectory() && ArchiveReader.isArchive(root);
 		}
-		parman.putParameter(PARSED_IMAGES, parsedImageFiles.toArray(new File[parsedImageFiles.size()]));
+		ImageFileIterator imageFiles = new ImageFileIterator(imageParser, roots, recursive);
+		int[] shard = parman.getParameter(SHARD);
+		File source = parman.getParameter(SOURCE);
+		imageFiles.setShardFilter(new ShardFilter(shard[0], shard[1], source.getPath().isEmpty() ? null : source));
+		parman.putParameter(PARSED_IMAGES, imageFiles);
 
-		System.out.print("Found " + parsedImageFiles.size() + " image files.");
-		if (!recursive && parsedImageFiles.size() == 0) {
-			System.out.println(" This may be the case because you forgot the " + RECURSION.namesString + " flag.");
-		} else {
+		if (!imageFiles.hasNext()) {
+			System.out.print("Found no image files.");
+			if (!recursive) {
+				System.out.print(" This may be the case because you forgot the " + RECURSION.namesString + " flag.");
+			}
 			System.out.print("\n");
 		}
 	}
 
+	/**
+	 * Reads the part of the source images this process transforms, given as
+	 * index/count.
+	 * 
+	 * @throws ParamParseException
+	 *             when the value is malformed or the index is out of range.
+	 */
+	private void initShard() throws ParamParseException {
+		List<String> values = readStringParameter(SHARD);
+		if (values.isEmpty()) {
+			parman.putParameter(SHARD, new int[] { 0, 1 });
+			return;
+		}
+		String[] parts = values.size() == 1 ? values.get(0).split("/") : new String[0];
+		if (parts.length != 2) {
+			throw new ParamParseException("The " + SHARD.namesString + " parameter has to be given as index/count, i.e. 0/4.");
+		}
+		int count = parsePositiveInt(parts[1], SHARD);
+		int index;
+		try {
+			index = Integer.parseInt(parts[0]);
+		} catch (NumberFormatException e) {
+			throw new ParamParseException("The value \"" + parts[0] + "\" for " + SHARD.namesString + " is not an integer.");
+		}
+		if (index < 0 || index >= count) {
+			throw new ParamParseException(
+					"The shard index for " + SHARD.namesString + " has to be between 0 and " + (count - 1) + ".");
+		}
+		parman.putParameter(SHARD, new int[] { index, count });
+	}
+
 	/**
 	 * Initializes the target parameter after verifying its validity.
 	 * 
@@ -110,6 +199,10 @@ public class ParameterParser {
 			throw new ParamParseException(
 					"You can only specify a single target file, which must be either directory or image file.");
 		}
+		if (targetPaths.size() == 0 && archiveSource) {
+			throw new ParamParseException("Images read from an archive need a target directory given with "
+					+ TARGET.namesString + ".");
+		}
 		if (targetPaths.size() == 0) {
 			System.out.println("No output file for the transformed images was specified using " + TARGET.namesString
 					+ ". Transformed images will be added to their source file directories.");
@@ -120,7 +213,7 @@ public class ParameterParser {
 		if (!target.exists()) {
 			throw new ParamParseException("The specified target file \"" + target.getAbsolutePath() + "\" does not exist.");
 		}
-		if (target.isDirectory() || new ImageParser().isImageFile(target)) {
+		if (target.isDirectory() || imageParser.isImageFile(target)) {
 			parman.putParameter(TARGET, target);
 		} else {
 			throw new ParamParseException(
@@ -128,6 +221,175 @@ public class ParameterParser {
 		}
 	}
 
+	/**
+	 * Reads the size of the tar shards the images are written to. Stores 0 if
+	 * each image is written to its own file.
+	 * 
+	 * @throws ParamParseException
+	 *             when the size is not a single positive integer or no target
+	 *             directory was given.
+	 */
+	private void initShardSize() throws ParamParseException {
+		List<String> size = readStringParameter(SHARD_SIZE);
+		if (size.size() > 1) {
+			throw new ParamParseException("The " + SHARD_SIZE.namesString + " parameter takes a single value.");
+		}
+		if (size.isEmpty()) {
+			parman.putParameter(SHARD_SIZE, 0L);
+			return;
+		}
+		if (!parman.<File> getParameter(TARGET).isDirectory()) {
+			throw new ParamParseException("Writing tar shards with " + SHARD_SIZE.namesString
+					+ " needs a target directory given with " + TARGET.namesString + ".");
+		}
+		parman.putParameter(SHARD_SIZE, parsePositiveInt(size.get(0), SHARD_SIZE) * 1024L * 1024);
+	}
+
+	/**
+	 * Reads the shape and element type of the arrays the images are stored as.
+	 * Stores an empty array if the images are encoded.
+	 * 
+	 * @throws ParamParseException
+	 *             when the shape or type is invalid, no target directory was
+	 *             given or tar shards were requested as well.
+	 */
+	private void initNpy() throws ParamParseException {
+		List<String> values = readStringParameter(NPY);
+		if (values.isEmpty()) {
+			parman.putParameter(NPY, new TensorFormat[0]);
+			return;
+		}
+		if (values.size() < 2 || values.size() > 3) {
+			throw new ParamParseException(
+					"The " + NPY.namesString + " parameter takes a height, a width and optionally an element type.");
+		}
+		if (!parman.<File> getParameter(TARGET).isDirectory()) {
+			throw new ParamParseException(
+					"Writing a .npy file with " + NPY.namesString + " needs a target directory given with " + TARGET.namesString + ".");
+		}
+		if (parman.<Long> getParameter(SHARD_SIZE) > 0) {
+			throw new ParamParseException(
+					"The " + NPY.namesString + " and " + SHARD_SIZE.namesString + " parameters can't be combined.");
+		}
+		TensorFormat.Layout layout = TensorFormat.Layout.UINT8_HWC;
+		if (values.size() == 3) {
+			if (values.get(2).equals("float32")) {
+				layout = TensorFormat.Layout.FLOAT32_CHW;
+			} else if (!values.get(2).equals("uint8")) {
+				throw new ParamParseException("The element type for " + NPY.namesString + " has to be either \"uint8\" or \"float32\".");
+			}
+		}
+		parman.putParameter(NPY, new TensorFormat[] {
+				new TensorFormat(parsePositiveInt(values.get(0), NPY), parsePositiveInt(values.get(1), NPY), layout) });
+	}
+
+	/**
+	 * Reads the size the images are resized to. Stores an empty array if the
+	 * images keep their size.
+	 * 
+	 * @throws ParamParseException
+	 *             when the size is invalid.
+	 */
+	private void initTargetSize() throws ParamParseException {
+		List<String> values = readStringParameter(TARGET_SIZE);
+		if (values.isEmpty()) {
+			parman.putParameter(TARGET_SIZE, new int[0]);
+			return;
+		}
+		if (values.size() != 2) {
+			throw new ParamParseException("The " + TARGET_SIZE.namesString + " parameter takes a height and a width.");
+		}
+		parman.putParameter(TARGET_SIZE,
+				new int[] { parsePositiveInt(values.get(0), TARGET_SIZE), parsePositiveInt(values.get(1), TARGET_SIZE) });
+	}
+
+	/**
+	 * Reads the output format and the options of the encoders.
+	 * 
+	 * @throws ParamParseException
+	 *             when the format is not supported or an option is unknown or
+	 *             out of range.
+	 */
+	private void initEncoder() throws ParamParseException {
+		EncoderSettings settings = new EncoderSettings();
+		List<String> format = readStringParameter(FORMAT);
+		if (format.size() > 1) {
+			throw new ParamParseException("The " + FORMAT.namesString + " parameter takes a single format.");
+		}
+		parman.putParameter(FORMAT, format.isEmpty() ? "" : format.get(0));
+		try {
+			if (format.size() == 1) {
+				settings.setOutputExtension(format.get(0).startsWith(".") ? format.get(0).substring(1) : format.get(0));
+			}
+			for (String option : readStringParameter(ENCODER)) {
+				String[] keyValue = option.split("=", 2);
+				if (keyValue.length != 2) {
+					throw new ParamParseException("The encoder option \"" + option + "\" is not given as key=value.");
+				}
+				String key = keyValue[0];
+				String value = keyValue[1];
+				if (key.equals("jpegQuality")) {
+					settings.setJpegQuality(parseOption(key, value));
+				} else if (key.equals("jpegOptimize")) {
+					settings.setJpegOptimize(parseOption(key, value) != 0);
+				} else if (key.equals("jpegProgressive")) {
+					settings.setJpegProgressive(parseOption(key, value) != 0);
+				} else if (key.equals("pngCompression")) {
+					settings.setPngCompression(parseOption(key, value));
+				} else if (key.equals("pngStrategy")) {
+					settings.setPngStrategy(parsePngStrategy(value));
+				} else if (key.equals("webpQuality")) {
+					settings.setWebpQuality(parseOption(key, value));
+				} else {
+					throw new ParamParseException("Unknown encoder option \"" + key + "\" for " + ENCODER.namesString + ".");
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			throw new ParamParseException(e.getMessage());
+		}
+		parman.putParameter(ENCODER, settings);
+	}
+
+	private int parseOption(String key, String value) throws ParamParseException {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new ParamParseException("The value \"" + value + "\" of the encoder option " + key + " is not an integer.");
+		}
+	}
+
+	private EncoderSettings.PngStrategy parsePngStrategy(String value) throws ParamParseException {
+		if (value.equals("huffman")) {
+			return EncoderSettings.PngStrategy.HUFFMAN_ONLY;
+		}
+		for (EncoderSettings.PngStrategy strategy : EncoderSettings.PngStrategy.values()) {
+			if (strategy.name().equalsIgnoreCase(value)) {
+				return strategy;
+			}
+		}
+		throw new ParamParseException("Unknown PNG strategy \"" + value + "\". Use default, filtered, huffman, rle or fixed.");
+	}
+
+	/**
+	 * Reads whether a previous run is resumed.
+	 * 
+	 * @throws ParamParseException
+	 *             when resuming without a target directory or with .npy
+	 *             output, whose positions depend on all images of the run.
+	 */
+	private void initResume() throws ParamParseException {
+		boolean resume = isBooleanParameterSet(RESUME);
+		if (resume && !parman.<File> getParameter(TARGET).isDirectory()) {
+			throw new ParamParseException(
+					"Resuming with " + RESUME.namesString + " needs the target directory of the previous run given with " + TARGET.namesString + ".");
+		}
+		if (resume && parman.<TensorFormat[]> getParameter(NPY).length > 0) {
+			throw new ParamParseException(
+					"The " + RESUME.namesString + " and " + NPY.namesString + " parameters can't be combined.");
+		}
+		parman.putParameter(RESUME, resume);
+	}
+
 	/**
 	 * Initializes the transformations parameter using the TransformParser.
 	 * 
@@ -145,9 +407,271 @@ public class ParameterParser {
 		parman.putParameter(TRANSFORMATIONS, transformations.toArray(new ITransform[transformations.size()]));
 	}
 
+	/**
+	 * Initializes the number of worker threads for the decode, transform and
+	 * encode stage.
+	 * 
+	 * @throws ParamParseException
+	 *             when the number of values is neither one nor three or a
+	 *             value is not a positive integer.
+	 */
+	private void initThreads() throws ParamParseException {
+		List<String> threadStrings = readStringParameter(THREADS);
+		int[] threads = new int[] { 1, 1, 1 };
+		if (threadStrings.size() == 1) {
+			int count = parsePositiveInt(threadStrings.get(0), THREADS);
+			threads = new int[] { count, count, count };
+		} else if (threadStrings.size() == 3) {
+			for (int i = 0; i < threads.length; i++) {
+				threads[i] = parsePositiveInt(threadStrings.get(i), THREADS);
+			}
+		} else if (threadStrings.size() != 0) {
+			throw new ParamParseException("The " + THREADS.namesString
+					+ " parameter takes either one thread count for all stages or three (decode, transform, encode).");
+		}
+		parman.putParameter(THREADS, threads);
+	}
+
+	/**
+	 * Initializes the parallelism mode of the transform threads.
+	 * 
+	 * @throws ParamParseException
+	 *             when the mode is neither "inter" nor "intra".
+	 */
+	private void initParallelism() throws ParamParseException {
+		List<String> modes = readStringParameter(PARALLELISM);
+		if (modes.size() == 0 || (modes.size() == 1 && modes.get(0).equals("inter"))) {
+			parman.putParameter(PARALLELISM, Parallelism.INTER_IMAGE);
+		} else if (modes.size() == 1 && modes.get(0).equals("intra")) {
+			parman.putParameter(PARALLELISM, Parallelism.INTRA_IMAGE);
+		} else {
+			throw new ParamParseException(
+					"The " + PARALLELISM.namesString + " parameter has to be either \"inter\" or \"intra\".");
+		}
+	}
+
+	/**
+	 * Initializes the warp backend used by grid transformations.
+	 * 
+	 * @throws ParamParseException
+	 *             when the backend is neither "java" nor "remap".
+	 */
+	private void initWarpBackend() throws ParamParseException {
+		List<String> backends = readStringParameter(WARP_BACKEND);
+		if (backends.size() == 0 || (backends.size() == 1 && backends.get(0).equals("java"))) {
+			parman.putParameter(WARP_BACKEND, WarpBackend.JAVA);
+		} else if (backends.size() == 1 && backends.get(0).equals("remap")) {
+			parman.putParameter(WARP_BACKEND, WarpBackend.REMAP);
+		} else {
+			throw new ParamParseException(
+					"The " + WARP_BACKEND.namesString + " parameter has to be either \"java\" or \"remap\".");
+		}
+	}
+
+	/**
+	 * Initializes the accuracy of the java warp backend.
+	 * 
+	 * @throws ParamParseException
+	 *             when the accuracy is neither "exact", "fast" nor "vector",
+	 *             or the vector kernel can't be used in the running JVM.
+	 */
+	private void initWarpAccuracy() throws ParamParseException {
+		List<String> accuracies = readStringParameter(WARP_ACCURACY);
+		if (accuracies.size() == 0 || (accuracies.size() == 1 && accuracies.get(0).equals("exact"))) {
+			parman.putParameter(WARP_ACCURACY, WarpAccuracy.EXACT);
+		} else if (accuracies.size() == 1 && accuracies.get(0).equals("fast")) {
+			parman.putParameter(WARP_ACCURACY, WarpAccuracy.FAST);
+		} else if (accuracies.size() == 1 && accuracies.get(0).equals("vector")) {
+			if (GridTransform.getVectorKernelWidth() == 0) {
+				throw new ParamParseException("The vector warp accuracy needs JDK 17 or newer, a build with the "
+						+ "\"vector\" profile and the JVM option --add-modules jdk.incubator.vector.");
+			}
+			parman.putParameter(WARP_ACCURACY, WarpAccuracy.VECTOR);
+		} else {
+			throw new ParamParseException("The " + WARP_ACCURACY.namesString
+					+ " parameter has to be either \"exact\", \"fast\" or \"vector\".");
+		}
+	}
+
+	/**
+	 * Initializes the limits of the distortion caches.
+	 * 
+	 * @throws ParamParseException
+	 *             when there are more than two values or a value is not a
+	 *             positive integer.
+	 */
+	private void initDistortionCache() throws ParamParseException {
+		List<String> limits = readStringParameter(DISTORTION_CACHE);
+		if (limits.size() > 2) {
+			throw new ParamParseException("The " + DISTORTION_CACHE.namesString
+					+ " parameter takes at most two values: the number of image sizes and the size in megabytes.");
+		}
+		long maxSizes = GridTransform.DEFAULT_CACHED_SIZES;
+		long maxBytes = GridTransform.DEFAULT_CACHE_BYTES;
+		if (limits.size() >= 1) {
+			maxSizes = parsePositiveInt(limits.get(0), DISTORTION_CACHE);
+		}
+		if (limits.size() == 2) {
+			maxBytes = parsePositiveInt(limits.get(1), DISTORTION_CACHE) * 1024L * 1024;
+		}
+		parman.putParameter(DISTORTION_CACHE, new long[] { maxSizes, maxBytes });
+	}
+
+	/**
+	 * Reads the number of variants generated from each image.
+	 * 
+	 * @throws ParamParseException
+	 *             when the number is not a single positive integer.
+	 */
+	private void initVariants() throws ParamParseException {
+		List<String> variants = readStringParameter(VARIANTS);
+		if (variants.size() > 1) {
+			throw new ParamParseException("The " + VARIANTS.namesString + " parameter takes a single value.");
+		}
+		parman.putParameter(VARIANTS, variants.size() == 1 ? parsePositiveInt(variants.get(0), VARIANTS) : 1);
+	}
+
+	/**
+	 * Reads the seed for the random transformations. Stores an empty array if
+	 * no seed was given.
+	 * 
+	 * @throws ParamParseException
+	 *             when the seed is not a single integer or the parameter is
+	 *             given without a value.
+	 */
+	private void initSeed() throws ParamParseException {
+		List<String> seed = readStringParameter(SEED);
+		if (seed.size() > 1 || (seed.isEmpty() && isParameterGiven(SEED))) {
+			throw new ParamParseException("The " + SEED.namesString + " parameter takes a single value.");
+		}
+		if (seed.isEmpty()) {
+			parman.putParameter(SEED, new long[0]);
+			return;
+		}
+		try {
+			parman.putParameter(SEED, new long[] { Long.parseLong(seed.get(0)) });
+		} catch (NumberFormatException e) {
+			throw new ParamParseException("The value \"" + seed.get(0) + "\" for " + SEED.namesString + " is not an integer.");
+		}
+	}
+
+	/**
+	 * Reads the interval of the progress lines.
+	 * 
+	 * @throws ParamParseException
+	 *             when the interval is not a single non-negative integer.
+	 */
+	private void initProgress() throws ParamParseException {
+		List<String> interval = readStringParameter(PROGRESS);
+		if (interval.size() > 1) {
+			throw new ParamParseException("The " + PROGRESS.namesString + " parameter takes a single value.");
+		}
+		if (interval.isEmpty()) {
+			parman.putParameter(PROGRESS, 10);
+		} else if (interval.get(0).equals("0")) {
+			parman.putParameter(PROGRESS, 0);
+		} else {
+			parman.putParameter(PROGRESS, parsePositiveInt(interval.get(0), PROGRESS));
+		}
+	}
+
+	/**
+	 * Reads the location of a file written by the program. Stores an empty
+	 * file if none was given.
+	 * 
+	 * @param param
+	 *            The parameter holding the file.
+	 * @throws ParamParseException
+	 *             when multiple files were given or the parent directory of the
+	 *             file doesn't exist.
+	 */
+	private void initOutputFile(Parameter param) throws ParamParseException {
+		List<String> paths = readStringParameter(param);
+		if (paths.size() > 1) {
+			throw new ParamParseException("The " + param.namesString + " parameter takes a single file.");
+		}
+		if (paths.isEmpty()) {
+			parman.putParameter(param, new File(""));
+			return;
+		}
+		File file = new File(paths.get(0));
+		if (!file.getAbsoluteFile().getParentFile().isDirectory()) {
+			throw new ParamParseException(
+					"The directory of the file \"" + file.getAbsolutePath() + "\" for " + param.namesString + " does not exist.");
+		}
+		parman.putParameter(param, file);
+	}
+
+	/**
+	 * Reads the size of the tiles large images are warped in. Stores 0 if
+	 * images are warped whole.
+	 * 
+	 * @throws ParamParseException
+	 *             when the size is not a single positive integer or the
+	 *             transformations are fused.
+	 */
+	private void initTileSize() throws ParamParseException {
+		List<String> size = readStringParameter(TILE_SIZE);
+		if (size.size() > 1) {
+			throw new ParamParseException("The " + TILE_SIZE.namesString + " parameter takes a single value.");
+		}
+		if (size.isEmpty()) {
+			parman.putParameter(TILE_SIZE, 0);
+			return;
+		}
+		if (parman.<Boolean> getParameter(FUSE)) {
+			throw new ParamParseException(
+					"The " + TILE_SIZE.namesString + " and " + FUSE.namesString + " parameters can't be combined.");
+		}
+		parman.putParameter(TILE_SIZE, parsePositiveInt(size.get(0), TILE_SIZE));
+	}
+
+	/**
+	 * Reads the native memory budget given in megabytes.
+	 * 
+	 * @throws ParamParseException
+	 *             when the budget is not a single positive integer.
+	 */
+	private void initMaxNativeMemory() throws ParamParseException {
+		List<String> budget = readStringParameter(MAX_NATIVE_MEMORY);
+		if (budget.size() > 1) {
+			throw new ParamParseException("The " + MAX_NATIVE_MEMORY.namesString + " parameter takes a single value.");
+		}
+		long maxBytes = Long.MAX_VALUE;
+		if (budget.size() == 1) {
+			maxBytes = parsePositiveInt(budget.get(0), MAX_NATIVE_MEMORY) * 1024L * 1024;
+		}
+		parman.putParameter(MAX_NATIVE_MEMORY, maxBytes);
+	}
+
+	/**
+	 * Parses an integer greater than zero.
+	 * 
+	 * @param value
+	 *            The string to parse.
+	 * @param param
+	 *            The parameter the value belongs to.
+	 * @return The parsed integer.
+	 * @throws ParamParseException
+	 *             when the value is not a positive integer.
+	 */
+	private int parsePositiveInt(String value, Parameter param) throws ParamParseException {
+		try {
+			int result = Integer.parseInt(value);
+			if (result > 0) {
+				return result;
+			}
+		} catch (NumberFormatException e) {
+			// handled below
+		}
+		throw new ParamParseException(
+				"The value \"" + value + "\" for " + param.namesString + " is not a positive integer.");
+	}
+
 	/**
 	 * Splits the command line arguments in multiple lists (one for each
-	 * parameter) and returns them.
+	 * parameter) and returns them. Arguments starting with a dash start a new
+	 * parameter, unless they are negative numbers like the seed -1.
 	 * 
 	 * @param args
 	 *            The command line arguments.
@@ -157,10 +681,10 @@ public class ParameterParser {
 		List<String[]> parameterList = new ArrayList<String[]>();
 		List<String> newParameter = new ArrayList<String>();
 		for (int i = 0; i < args.length; i++) {
-			if (args[i].startsWith("-")) {
+			if (args[i].startsWith("-") && !isNegativeNumber(args[i])) {
 				newParameter.clear();
 				newParameter.add(args[i]);
-				while (i + 1 < args.length && !args[i + 1].startsWith("-")) {
+				while (i + 1 < args.length && (!args[i + 1].startsWith("-") || isNegativeNumber(args[i + 1]))) {
 					i++;
 					newParameter.add(args[i]);
 				}
@@ -170,6 +694,29 @@ public class ParameterParser {
 		return parameterList;
 	}
 
+	private static boolean isNegativeNumber(String arg) {
+		return arg.matches("-\\d+(\\.\\d+)?");
+	}
+
+	/**
+	 * Checks whether a parameter is given in the parameter list, with or
+	 * without values.
+	 * 
+	 * @param param
+	 *            The parameter to check for.
+	 * @return Whether the parameter is given.
+	 */
+	private boolean isParameterGiven(Parameter param) {
+		for (String[] parameter : parameterList) {
+			for (String parName : param.names) {
+				if (parameter[0].equals(parName)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Checks the parameter list for a boolean parameter.
 	 * 
@@ -224,10 +771,31 @@ public class ParameterParser {
 		System.out.println();
 		System.out.println("The following parameters are required for a transformation:");
 		printParam(SOURCE);
+		printParam(SHARD);
 		printParam(TRANSFORMATIONS);
 		System.out.println("The following parameters are optional:");
 		printParam(TARGET);
+		printParam(SHARD_SIZE);
+		printParam(TARGET_SIZE);
+		printParam(FORMAT);
+		printParam(ENCODER);
+		printParam(NPY);
+		printParam(RESUME);
+		printParam(VARIANTS);
+		printParam(SEED);
 		printParam(RECURSION);
+		printParam(TRUST_EXTENSIONS);
+		printParam(THREADS);
+		printParam(PARALLELISM);
+		printParam(WARP_BACKEND);
+		printParam(WARP_ACCURACY);
+		printParam(TILE_SIZE);
+		printParam(DISTORTION_CACHE);
+		printParam(FUSE);
+		printParam(MAX_NATIVE_MEMORY);
+		printParam(PROGRESS);
+		printParam(REPORT);
+		printParam(PROMETHEUS);
 		printParam(HELP);
 		printParam(HELPTF);
 		System.exit(0);
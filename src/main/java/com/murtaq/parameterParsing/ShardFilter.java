@@ -0,0 +1,92 @@
+package com.murtaq.parameterParsing;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Selects the images of one shard, when a run is split over several
+ * processes. Images are assigned by a hash of their path relative to the
+ * source location, the same path the outputs are stored under. The shards
+ * are thus disjoint and stable, regardless of the order of the directory
+ * listings, the mount point of the source location or the number of
+ * threads.
+ */
+class ShardFilter {
+
+	private final int index, count;
+	private final Path source;
+
+	/**
+	 * Creates a new filter.
+	 * 
+	 * @param index
+	 *            The shard to select, from 0 to count - 1.
+	 * @param count
+	 *            The number of shards.
+	 * @param source
+	 *            The source directory or archive, or null if single files
+	 *            were given as source.
+	 */
+	ShardFilter(int index, int count, File source) {
+		this.index = index;
+		this.count = count;
+		this.source = source == null ? null : source.getAbsoluteFile().toPath();
+	}
+
+	/**
+	 * Tests whether an image file belongs to the shard.
+	 * 
+	 * @param file
+	 *            The image file.
+	 * @return Whether the image belongs to the shard.
+	 */
+	boolean accepts(File file) {
+		if (count == 1) {
+			return true;
+		}
+		if (source == null) {
+			return accepts(file.getName());
+		}
+		return accepts(source.relativize(file.getAbsoluteFile().toPath()).toString().replace(File.separatorChar, '/'));
+	}
+
+	/**
+	 * Tests whether an entry of an archive belongs to the shard.
+	 * 
+	 * @param archive
+	 *            The archive.
+	 * @param entry
+	 *            The normalized path of the entry inside the archive.
+	 * @return Whether the image belongs to the shard.
+	 */
+	boolean accepts(File archive, String entry) {
+		if (count == 1) {
+			return true;
+		}
+		if (source == null) {
+			return accepts(entry);
+		}
+		String archivePath = source.relativize(archive.getAbsoluteFile().toPath()).toString();
+		return accepts(archivePath.isEmpty() ? entry : archivePath.replace(File.separatorChar, '/') + "/" + entry);
+	}
+
+	private boolean accepts(String key) {
+		return Long.remainderUnsigned(hash(key), count) == index;
+	}
+
+	/*
+	 * FNV-1a over the UTF-8 bytes, followed by the SplitMix64 finalizer to
+	 * spread similar paths evenly.
+	 */
+	private static long hash(String key) {
+		long hash = 0xCBF29CE484222325L;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xFF;
+			hash *= 0x100000001B3L;
+		}
+		hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+		hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+		return hash ^ (hash >>> 31);
+	}
+}
@@ -0,0 +1,239 @@
+package com.murtaq.parameterParsing;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the files of a tar archive from a stream. Understands the ustar
+ * format together with the pax and GNU extensions for long names, which
+ * covers the archives written by GNU tar, bsdtar and Python's tarfile.
+ */
+class TarArchiveReader extends ArchiveReader {
+
+	private static final int BLOCK = 512;
+
+	private final InputStream in;
+	private final byte[] header = new byte[BLOCK];
+
+	/*
+	 * Bytes of the current entry and its padding that weren't read yet.
+	 */
+	private long entryRemaining, paddingRemaining;
+	private long entrySize;
+
+	private final InputStream entryStream = new InputStream() {
+
+		@Override
+		public int read() throws IOException {
+			if (entryRemaining == 0) {
+				return -1;
+			}
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException("Truncated tar archive.");
+			}
+			entryRemaining--;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (entryRemaining == 0) {
+				return -1;
+			}
+			int read = in.read(b, off, (int) Math.min(len, entryRemaining));
+			if (read < 0) {
+				throw new EOFException("Truncated tar archive.");
+			}
+			entryRemaining -= read;
+			return read;
+		}
+	};
+
+	TarArchiveReader(InputStream in) {
+		this.in = in;
+	}
+
+	@Override
+	String nextEntry() throws IOException {
+		String longName = null;
+		while (true) {
+			skip(entryRemaining + paddingRemaining);
+			entryRemaining = paddingRemaining = 0;
+			if (!readHeader()) {
+				return null;
+			}
+			long size = parseNumber(124, 12);
+			entrySize = entryRemaining = size;
+			paddingRemaining = (BLOCK - size % BLOCK) % BLOCK;
+			char type = (char) header[156];
+			if (type == 'x') {
+				String path = readPaxPath();
+				if (path != null) {
+					longName = path;
+				}
+			} else if (type == 'L') {
+				longName = trim(readContent());
+			} else if (type == '0' || type == '\0' || type == '7') {
+				String name = longName != null ? longName : headerName();
+				// Old archives mark directories only by a trailing slash
+				if (!name.endsWith("/")) {
+					return name;
+				}
+				longName = null;
+			} else {
+				// Directories, links, devices and global pax headers
+				longName = null;
+			}
+		}
+	}
+
+	@Override
+	long getEntrySize() {
+		return entrySize;
+	}
+
+	@Override
+	InputStream getEntryStream() {
+		return entryStream;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Reads the next header block.
+	 * 
+	 * @return False, if the end of the archive was reached.
+	 */
+	private boolean readHeader() throws IOException {
+		int read = 0;
+		while (read < BLOCK) {
+			int n = in.read(header, read, BLOCK - read);
+			if (n < 0) {
+				if (read == 0) {
+					return false;
+				}
+				throw new EOFException("Truncated tar archive.");
+			}
+			read += n;
+		}
+		// The archive ends with empty blocks
+		for (byte b : header) {
+			if (b != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private String headerName() {
+		String name = string(0, 100);
+		// ustar archives store the beginning of long names in the prefix field
+		if (string(257, 5).equals("ustar") && header[345] != 0) {
+			name = string(345, 155) + "/" + name;
+		}
+		return name;
+	}
+
+	/**
+	 * Reads the path from the records of a pax extended header, which have the
+	 * form "length key=value\n".
+	 */
+	private String readPaxPath() throws IOException {
+		byte[] content = readContent();
+		String path = null;
+		int pos = 0;
+		while (pos < content.length) {
+			int space = pos;
+			while (space < content.length && content[space] != ' ') {
+				space++;
+			}
+			if (space == content.length) {
+				break;
+			}
+			int length = Integer.parseInt(new String(content, pos, space - pos, StandardCharsets.US_ASCII));
+			if (length <= 0 || pos + length > content.length) {
+				throw new IOException("Malformed pax header in tar archive.");
+			}
+			String record = new String(content, space + 1, pos + length - space - 2, StandardCharsets.UTF_8);
+			if (record.startsWith("path=")) {
+				path = record.substring(5);
+			}
+			pos += length;
+		}
+		return path;
+	}
+
+	private byte[] readContent() throws IOException {
+		if (entryRemaining > Integer.MAX_VALUE) {
+			throw new IOException("Tar header too large.");
+		}
+		byte[] content = new byte[(int) entryRemaining];
+		int read = 0;
+		while (read < content.length) {
+			int n = entryStream.read(content, read, content.length - read);
+			if (n < 0) {
+				throw new EOFException("Truncated tar archive.");
+			}
+			read += n;
+		}
+		return content;
+	}
+
+	/*
+	 * Numbers are stored as octal text, large numbers in base-256 with the
+	 * highest bit of the field set.
+	 */
+	private long parseNumber(int offset, int length) throws IOException {
+		if ((header[offset] & 0x80) != 0) {
+			long value = header[offset] & 0x7F;
+			for (int i = 1; i < length; i++) {
+				value = (value << 8) | (header[offset + i] & 0xFF);
+			}
+			return value;
+		}
+		String octal = string(offset, length).trim();
+		if (octal.isEmpty()) {
+			return 0;
+		}
+		try {
+			return Long.parseLong(octal, 8);
+		} catch (NumberFormatException e) {
+			throw new IOException("Malformed header in tar archive.", e);
+		}
+	}
+
+	private String string(int offset, int length) {
+		int end = offset;
+		while (end < offset + length && header[end] != 0) {
+			end++;
+		}
+		return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+	}
+
+	private static String trim(byte[] name) {
+		int end = 0;
+		while (end < name.length && name[end] != 0) {
+			end++;
+		}
+		return new String(name, 0, end, StandardCharsets.UTF_8);
+	}
+
+	private void skip(long bytes) throws IOException {
+		while (bytes > 0) {
+			long skipped = in.skip(bytes);
+			if (skipped <= 0) {
+				if (in.read() < 0) {
+					throw new EOFException("Truncated tar archive.");
+				}
+				skipped = 1;
+			}
+			bytes -= skipped;
+		}
+	}
+}
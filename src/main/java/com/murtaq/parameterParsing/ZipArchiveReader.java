@@ -0,0 +1,66 @@
+package com.murtaq.parameterParsing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads the files of a zip archive in the order of its central directory.
+ */
+class ZipArchiveReader extends ArchiveReader {
+
+	private final ZipFile zip;
+	private final Enumeration<? extends ZipEntry> entries;
+	private ZipEntry entry;
+	private InputStream entryStream;
+
+	ZipArchiveReader(File archive) throws IOException {
+		this.zip = new ZipFile(archive);
+		this.entries = zip.entries();
+	}
+
+	@Override
+	String nextEntry() throws IOException {
+		closeEntryStream();
+		while (entries.hasMoreElements()) {
+			entry = entries.nextElement();
+			if (!entry.isDirectory()) {
+				return entry.getName();
+			}
+		}
+		entry = null;
+		return null;
+	}
+
+	@Override
+	long getEntrySize() {
+		return entry.getSize();
+	}
+
+	@Override
+	InputStream getEntryStream() throws IOException {
+		if (entryStream == null) {
+			entryStream = zip.getInputStream(entry);
+		}
+		return entryStream;
+	}
+
+	private void closeEntryStream() throws IOException {
+		if (entryStream != null) {
+			entryStream.close();
+			entryStream = null;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			closeEntryStream();
+		} finally {
+			zip.close();
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package com.murtaq.transformation;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+
+import com.murtaq.util.NativeMemoryTracker;
+
+/**
+ * Keeps track of the native memory used by the images in flight, their
+ * transformed results and the intermediate buffers of the transforming
+ * threads. As the listener of the {@link NativeMemoryTracker} during a run, it
+ * also counts the scratch matrices of the transformations and the output, and
+ * the cached distortions and maps. The estimated memory of a new image is reserved before
+ * it is decoded, which only succeeds while the tracked memory stays within the
+ * budget, otherwise the reserving thread blocks until enough memory was
+ * released. After decoding, the reservation is replaced by the actual size of
+ * the image data. An image is always admitted when no other image is in
+ * flight, so that images larger than the budget can still be processed.
+ * <p>
+ * The budget can be exceeded by images whose size was underestimated, see
+ * {@link com.murtaq.main.ImageProvider#estimateDecodedSize}, and by the
+ * working memory the transformations allocate for an admitted image.
+ */
+class NativeMemoryBudget implements NativeMemoryTracker.Listener {
+
+	private final long maxBytes;
+	private long usedBytes, peakBytes;
+	private int imagesInFlight;
+
+	/**
+	 * Creates a new budget.
+	 * 
+	 * @param maxBytes
+	 *            The maximum number of tracked bytes, or Long.MAX_VALUE for an
+	 *            unlimited budget.
+	 */
+	NativeMemoryBudget(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Reserves the estimated memory of an image before it is decoded, blocking
+	 * while it would exceed the budget.
+	 * 
+	 * @param bytes
+	 *            The estimated size of the image data.
+	 * @throws InterruptedException
+	 *             when the thread was interrupted while waiting.
+	 */
+	synchronized void reserve(long bytes) throws InterruptedException {
+		while (imagesInFlight > 0 && usedBytes + bytes > maxBytes) {
+			wait();
+		}
+		imagesInFlight++;
+		allocated(bytes);
+	}
+
+	/**
+	 * Replaces the reservation of an image by the memory of its decoded data.
+	 * 
+	 * @param reserved
+	 *            The number of bytes reserved for the image.
+	 * @param image
+	 *            The decoded image data.
+	 * @return The number of bytes tracked for the image.
+	 */
+	synchronized long admit(long reserved, Mat image) {
+		long bytes = sizeOf(image);
+		allocated(bytes - reserved);
+		return bytes;
+	}
+
+	/**
+	 * Releases the reservation of an image that couldn't be decoded.
+	 * 
+	 * @param reserved
+	 *            The number of bytes reserved for the image.
+	 */
+	synchronized void cancel(long reserved) {
+		allocated(-reserved);
+		finished();
+	}
+
+	/**
+	 * Marks an admitted image as completely processed.
+	 */
+	synchronized void finished() {
+		imagesInFlight--;
+		notifyAll();
+	}
+
+	/**
+	 * Tracks memory that was allocated or, for negative values, released.
+	 * 
+	 * @param bytes
+	 *            The number of bytes.
+	 */
+	@Override
+	public synchronized void allocated(long bytes) {
+		usedBytes += bytes;
+		peakBytes = Math.max(peakBytes, usedBytes);
+		if (bytes < 0) {
+			notifyAll();
+		}
+	}
+
+	synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	synchronized long getPeakBytes() {
+		return peakBytes;
+	}
+
+	/**
+	 * Returns the native memory occupied by the data of a matrix.
+	 * 
+	 * @param mat
+	 *            The matrix.
+	 * @return The size in bytes.
+	 */
+	static long sizeOf(Mat mat) {
+		return NativeMemoryTracker.sizeOf(mat);
+	}
+
+	/**
+	 * Returns the native memory occupied by a result matrix and the two
+	 * intermediate buffers of a transforming thread.
+	 */
+	static long sizeOf(Mat result, Mat[] buffers) {
+		return sizeOf(result) + sizeOf(buffers[0]) + sizeOf(buffers[1]);
+	}
+}
@@ -0,0 +1,19 @@
+package com.murtaq.transformation;
+
+/**
+ * Determines how the transform threads of the Transformator are used.
+ */
+public enum Parallelism {
+
+	/**
+	 * Each transform thread transforms a different image.
+	 */
+	INTER_IMAGE,
+
+	/**
+	 * All transform threads work together on bands of the same image. Suited
+	 * for very large images, where a single image takes seconds to warp.
+	 */
+	INTRA_IMAGE;
+
+}
@@ -0,0 +1,86 @@
+package com.murtaq.transformation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.murtaq.metrics.PrometheusTextfile;
+import com.murtaq.metrics.RunMetrics;
+
+/**
+ * Periodically prints the progress of a run and updates the Prometheus
+ * textfile, if one was requested.
+ */
+class ProgressReporter {
+
+	private final RunMetrics metrics;
+	private final NativeMemoryBudget budget;
+	private final int intervalSeconds;
+	private final File prometheusFile;
+	private ScheduledExecutorService timer;
+
+	/**
+	 * Creates a new reporter.
+	 * 
+	 * @param metrics
+	 *            The metrics of the run.
+	 * @param budget
+	 *            The budget tracking the native memory of the run.
+	 * @param intervalSeconds
+	 *            The seconds between two reports or 0 for no periodic
+	 *            reports.
+	 * @param prometheusFile
+	 *            The Prometheus textfile or null, if none is written.
+	 */
+	ProgressReporter(RunMetrics metrics, NativeMemoryBudget budget, int intervalSeconds, File prometheusFile) {
+		this.metrics = metrics;
+		this.budget = budget;
+		this.intervalSeconds = intervalSeconds;
+		this.prometheusFile = prometheusFile;
+	}
+
+	void start() {
+		if (intervalSeconds <= 0) {
+			return;
+		}
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "progress");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		timer.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				report(true);
+			}
+		}, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stops the periodic reports and writes the final state of the metrics.
+	 */
+	void stop() {
+		if (timer != null) {
+			timer.shutdownNow();
+		}
+		report(false);
+	}
+
+	private void report(boolean printProgress) {
+		metrics.updateNativeMemory(budget.getUsedBytes(), budget.getPeakBytes());
+		if (printProgress) {
+			System.out.println(metrics.progressLine());
+		}
+		if (prometheusFile != null) {
+			try {
+				PrometheusTextfile.write(metrics, prometheusFile);
+			} catch (IOException e) {
+				System.out.println("Couldn't write the metrics to \"" + prometheusFile.getAbsolutePath() + "\": " + e);
+			}
+		}
+	}
+}
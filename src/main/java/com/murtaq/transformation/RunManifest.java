@@ -0,0 +1,249 @@
+package com.murtaq.transformation;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.murtaq.main.Image;
+
+/**
+ * Records every written output in a tab separated file in the target
+ * directory, so that an interrupted run can be resumed. Each line holds the
+ * source image with its size and modification time, the signature of the
+ * transformation chain, the variant and the output. Lines are written in
+ * batches, after the outputs they describe were flushed.
+ * <p>
+ * When resuming, images whose outputs were all recorded under the names the
+ * current run would write, for the same chain, and which are unchanged since
+ * are skipped without decoding them. Entries of
+ * a different chain are ignored, so changing the transformations invalidates
+ * the whole manifest.
+ */
+class RunManifest {
+
+	/*
+	 * Lines are flushed after this many outputs or seconds, whichever comes
+	 * first.
+	 */
+	private static final int BATCH_SIZE = 256;
+	private static final long BATCH_NANOS = 2000000000L;
+
+	private final String chainHash;
+	private final Flushable output;
+	private final Map<String, FinishedImage> finished = new HashMap<String, FinishedImage>();
+	private final Writer writer;
+	private int pending;
+	private long lastFlush = System.nanoTime();
+	private long skipped;
+
+	/**
+	 * Opens the manifest.
+	 * 
+	 * @param file
+	 *            The manifest file.
+	 * @param chainSignature
+	 *            Describes the transformation chain and everything else that
+	 *            changes the outputs.
+	 * @param resume
+	 *            Whether the images recorded in an existing manifest are
+	 *            skipped. Otherwise the manifest is started anew.
+	 * @param output
+	 *            Flushed before each batch of lines, so that the manifest
+	 *            never lists outputs that weren't written yet.
+	 * @throws IOException
+	 *             when the manifest can't be read or created.
+	 */
+	RunManifest(File file, String chainSignature, boolean resume, Flushable output) throws IOException {
+		this.chainHash = hash(chainSignature);
+		this.output = output;
+		if (resume && file.exists()) {
+			load(file);
+		}
+		writer = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(file, resume), StandardCharsets.UTF_8));
+		writer.write("# chain " + chainHash + " " + escape(chainSignature) + "\n");
+	}
+
+	private void load(File file) throws IOException {
+		boolean otherChain = false;
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("#")) {
+					continue;
+				}
+				String[] fields = line.split("\t");
+				// The last line may be incomplete if the previous run was killed
+				if (fields.length != 6) {
+					continue;
+				}
+				if (!fields[3].equals(chainHash)) {
+					otherChain = true;
+					continue;
+				}
+				try {
+					String source = unescape(fields[0]);
+					long size = Long.parseLong(fields[1]);
+					long modified = Long.parseLong(fields[2]);
+					int variant = Integer.parseInt(fields[4]);
+					FinishedImage image = finished.get(source);
+					if (image == null || image.size != size || image.modified != modified) {
+						image = new FinishedImage(size, modified);
+						finished.put(source, image);
+					}
+					image.outputs.put(variant, unescape(fields[5]));
+				} catch (NumberFormatException e) {
+					continue;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		if (otherChain) {
+			System.out.println("Ignoring manifest entries of a different transformation chain.");
+		}
+	}
+
+	/**
+	 * Tells whether all variants of the image were written by a previous run
+	 * with the same transformations under the same names, and the image
+	 * didn't change since.
+	 * 
+	 * @param image
+	 *            The image without image data.
+	 * @param outputNames
+	 *            The outputs the current run would write for the variants,
+	 *            relative to the target directory.
+	 * @return Whether the image can be skipped.
+	 */
+	boolean isFinished(Image image, String[] outputNames) {
+		if (finished.isEmpty()) {
+			return false;
+		}
+		// The map is only modified while loading the manifest
+		FinishedImage previous = finished.get(sourceKey(image));
+		if (previous == null) {
+			return false;
+		}
+		for (int variant = 0; variant < outputNames.length; variant++) {
+			if (!outputNames[variant].equals(previous.outputs.get(variant))) {
+				return false;
+			}
+		}
+		if (previous.size != image.getEncodedSize() || previous.modified != modified(image)) {
+			return false;
+		}
+		synchronized (this) {
+			skipped++;
+		}
+		return true;
+	}
+
+	/**
+	 * Records a written output.
+	 * 
+	 * @param image
+	 *            The source image.
+	 * @param variant
+	 *            The variant that was written.
+	 * @param outputName
+	 *            The output relative to the target directory.
+	 * @throws IOException
+	 *             when the manifest can't be written.
+	 */
+	synchronized void record(Image image, int variant, String outputName) throws IOException {
+		writer.write(escape(sourceKey(image)) + "\t" + image.getEncodedSize() + "\t" + modified(image) + "\t"
+				+ chainHash + "\t" + variant + "\t" + escape(outputName) + "\n");
+		pending++;
+		if (pending >= BATCH_SIZE || System.nanoTime() - lastFlush > BATCH_NANOS) {
+			flush();
+		}
+	}
+
+	private void flush() throws IOException {
+		output.flush();
+		writer.flush();
+		pending = 0;
+		lastFlush = System.nanoTime();
+	}
+
+	synchronized long getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * Flushes the remaining lines and closes the manifest. The output has to
+	 * be completed before.
+	 * 
+	 * @throws IOException
+	 *             when the manifest can't be written.
+	 */
+	synchronized void close() throws IOException {
+		writer.close();
+	}
+
+	private static String sourceKey(Image image) {
+		return image.getFile().getAbsolutePath();
+	}
+
+	private static long modified(Image image) {
+		File file = image.getArchive() != null ? image.getArchive() : image.getFile();
+		return file.lastModified();
+	}
+
+	/*
+	 * FNV-1a, only used to tell chains apart, not for security.
+	 */
+	private static String hash(String signature) {
+		long hash = 0xCBF29CE484222325L;
+		for (byte b : signature.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xFF;
+			hash *= 0x100000001B3L;
+		}
+		return String.format("%016x", hash);
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+	}
+
+	private static String unescape(String value) {
+		StringBuilder result = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' && i + 1 < value.length()) {
+				char next = value.charAt(++i);
+				result.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+			} else {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * The outputs of a source image recorded in the manifest by variant.
+	 */
+	private static class FinishedImage {
+
+		final long size, modified;
+		final Map<Integer, String> outputs = new HashMap<Integer, String>();
+
+		FinishedImage(long size, long modified) {
+			this.size = size;
+			this.modified = modified;
+		}
+	}
+}
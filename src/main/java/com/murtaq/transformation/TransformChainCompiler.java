@@ -0,0 +1,57 @@
+package com.murtaq.transformation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.murtaq.transformations.FusedTransform;
+import com.murtaq.transformations.IGeometricTransform;
+import com.murtaq.transformations.ITransform;
+
+/**
+ * Combines consecutive geometric transformations of a transformation chain, so
+ * that each group of them resamples the image only once. All other
+ * transformations act as barriers between the groups and stay unchanged.
+ */
+class TransformChainCompiler {
+
+	/**
+	 * Compiles the transformation chain.
+	 * 
+	 * @param transforms
+	 *            The transformations in the order they are applied.
+	 * @return The compiled chain, applying the same transformations in the
+	 *         same order.
+	 */
+	static List<ITransform> compile(List<ITransform> transforms) {
+		List<ITransform> compiled = new ArrayList<ITransform>();
+		List<ITransform> group = new ArrayList<ITransform>();
+		for (ITransform tf : transforms) {
+			if (tf instanceof IGeometricTransform) {
+				group.add(tf);
+			} else {
+				addGroup(compiled, group);
+				compiled.add(tf);
+			}
+		}
+		addGroup(compiled, group);
+		return compiled;
+	}
+
+	/**
+	 * Adds a group of geometric transformations to the compiled chain, fusing
+	 * them if there are more than one, and clears the group.
+	 */
+	private static void addGroup(List<ITransform> compiled, List<ITransform> group) {
+		if (group.size() == 1) {
+			compiled.add(group.get(0));
+		} else if (group.size() > 1) {
+			List<IGeometricTransform> geometric = new ArrayList<IGeometricTransform>();
+			for (ITransform tf : group) {
+				geometric.add((IGeometricTransform) tf);
+			}
+			compiled.add(new FusedTransform(geometric));
+		}
+		group.clear();
+	}
+
+}
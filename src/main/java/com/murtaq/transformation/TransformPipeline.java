@@ -0,0 +1,300 @@
+package com.murtaq.transformation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+
+import com.murtaq.main.Image;
+import com.murtaq.main.ImageProvider;
+
+/**
+ * Processes images in three stages (decode, transform and encode), each with
+ * its own pool of worker threads. The stages are connected by bounded queues,
+ * so that reading and writing images overlaps with the transformations while
+ * the number of images held in memory stays limited.
+ */
+class TransformPipeline {
+
+	/*
+	 * Number of queue slots per worker thread of the consuming stage.
+	 */
+	private static final int QUEUE_SLOTS_PER_THREAD = 2;
+
+	/*
+	 * Marks the end of the input for a single consuming worker.
+	 */
+	private static final Job END_OF_INPUT = new Job(null, 0);
+
+	private final Transformator transformator;
+	private final NativeMemoryBudget budget;
+	private final int decodeThreads, transformThreads, encodeThreads;
+
+	private final BlockingQueue<Job> decodedImages;
+	private final BlockingQueue<Job> transformedImages;
+
+	/*
+	 * Matrices for transformed images that were written and can be reused.
+	 */
+	private final Queue<Mat> freeResults = new ConcurrentLinkedQueue<Mat>();
+
+	private final List<ExecutorService> stages = new CopyOnWriteArrayList<ExecutorService>();
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+	/**
+	 * Creates a new pipeline.
+	 * 
+	 * @param transformator
+	 *            The transformator providing the transformations and the
+	 *            target locations.
+	 * @param budget
+	 *            The budget limiting the native memory of the images in
+	 *            flight.
+	 * @param decodeThreads
+	 *            The number of threads reading images from the disk.
+	 * @param transformThreads
+	 *            The number of threads applying the transformations.
+	 * @param encodeThreads
+	 *            The number of threads writing images to the disk.
+	 */
+	TransformPipeline(Transformator transformator, NativeMemoryBudget budget, int decodeThreads, int transformThreads,
+			int encodeThreads) {
+		this.transformator = transformator;
+		this.budget = budget;
+		this.decodeThreads = decodeThreads;
+		this.transformThreads = transformThreads;
+		this.encodeThreads = encodeThreads;
+		this.decodedImages = new ArrayBlockingQueue<Job>(transformThreads * QUEUE_SLOTS_PER_THREAD);
+		this.transformedImages = new ArrayBlockingQueue<Job>(encodeThreads * QUEUE_SLOTS_PER_THREAD);
+	}
+
+	/**
+	 * Runs all images of the provider through the pipeline and returns when
+	 * all of them were written to the disk.
+	 * 
+	 * @param provider
+	 *            The provider for the images.
+	 * @throws IllegalStateException
+	 *             when a worker failed. All other workers are stopped in this
+	 *             case.
+	 */
+	void run(final ImageProvider provider) {
+		try {
+			List<Future<Void>> decoders = start("decode", decodeThreads, new Callable<Void>() {
+				public Void call() throws InterruptedException {
+					decode(provider);
+					return null;
+				}
+			});
+			List<Future<Void>> transformers = start("transform", transformThreads, new Callable<Void>() {
+				public Void call() throws InterruptedException {
+					transform();
+					return null;
+				}
+			});
+			List<Future<Void>> encoders = start("encode", encodeThreads, new Callable<Void>() {
+				public Void call() throws InterruptedException {
+					encode();
+					return null;
+				}
+			});
+
+			await(decoders);
+			signalEndOfInput(decodedImages, transformThreads);
+			await(transformers);
+			signalEndOfInput(transformedImages, encodeThreads);
+			await(encoders);
+			releaseFreeResults();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while transforming images.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = failure.get() != null ? failure.get() : e.getCause();
+			throw new IllegalStateException("A pipeline worker failed: " + cause, cause);
+		} finally {
+			stopAll();
+		}
+	}
+
+	private void decode(ImageProvider provider) throws InterruptedException {
+		Image image;
+		while ((image = transformator.nextImage(provider)) != null) {
+			long reserved = provider.estimateDecodedSize(image);
+			budget.reserve(reserved);
+			try {
+				transformator.decodeImage(provider, image);
+			} catch (RuntimeException e) {
+				budget.cancel(reserved);
+				throw e;
+			}
+			decodedImages.put(new Job(image, budget.admit(reserved, image.getImageData())));
+		}
+	}
+
+	private void transform() throws InterruptedException {
+		Mat[] buffers = new Mat[] { new Mat(), new Mat() };
+		try {
+			Job job;
+			while ((job = decodedImages.take()) != END_OF_INPUT) {
+				int variants = transformator.getVariants();
+				AtomicInteger pendingVariants = new AtomicInteger(variants);
+				for (int variant = 0; variant < variants; variant++) {
+					Job variantJob = new Job(job.image, job.imageBytes);
+					variantJob.variant = variant;
+					variantJob.pendingVariants = pendingVariants;
+					Mat result = freeResults.poll();
+					variantJob.result = result != null ? result : new Mat();
+					long before = NativeMemoryBudget.sizeOf(variantJob.result, buffers);
+					transformator.applyTransformations(job.image.getImageData(), buffers, variantJob.result,
+							transformator.createContext(job.image, variant));
+					budget.allocated(NativeMemoryBudget.sizeOf(variantJob.result, buffers) - before);
+
+					// The source image is not needed anymore once all variants
+					// were transformed
+					if (variant == variants - 1) {
+						job.image.release();
+						budget.allocated(-job.imageBytes);
+					}
+					transformedImages.put(variantJob);
+				}
+			}
+		} finally {
+			budget.allocated(-NativeMemoryBudget.sizeOf(buffers[0]) - NativeMemoryBudget.sizeOf(buffers[1]));
+			buffers[0].close();
+			buffers[1].close();
+			transformator.releaseBuffers();
+		}
+	}
+
+	private void encode() throws InterruptedException {
+		Job job;
+		while ((job = transformedImages.take()) != END_OF_INPUT) {
+			transformator.writeImage(job.image, job.variant, job.result);
+			// Keep at most one result per transform thread for reuse
+			if (freeResults.size() < transformThreads) {
+				freeResults.offer(job.result);
+			} else {
+				budget.allocated(-NativeMemoryBudget.sizeOf(job.result));
+				job.result.close();
+			}
+			if (job.pendingVariants.decrementAndGet() == 0) {
+				budget.finished();
+			}
+		}
+	}
+
+	/**
+	 * Closes the result matrices which were kept for reuse.
+	 */
+	private void releaseFreeResults() {
+		Mat result;
+		while ((result = freeResults.poll()) != null) {
+			budget.allocated(-NativeMemoryBudget.sizeOf(result));
+			result.close();
+		}
+	}
+
+	/**
+	 * Starts a stage with the given number of identical workers. A failing
+	 * worker stops the whole pipeline, so that no other worker stays blocked
+	 * on a queue that is never drained or filled again.
+	 */
+	private List<Future<Void>> start(String name, int threads, final Callable<Void> worker) {
+		ExecutorService stage = Executors.newFixedThreadPool(threads, new StageThreadFactory(name));
+		stages.add(stage);
+		List<Future<Void>> workers = new ArrayList<Future<Void>>();
+		for (int i = 0; i < threads; i++) {
+			workers.add(stage.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					try {
+						return worker.call();
+					} catch (Throwable t) {
+						if (failure.compareAndSet(null, t)) {
+							stopAll();
+						}
+						throw t;
+					}
+				}
+			}));
+		}
+		return workers;
+	}
+
+	private void await(List<Future<Void>> workers) throws InterruptedException, ExecutionException {
+		for (Future<Void> worker : workers) {
+			worker.get();
+		}
+	}
+
+	private void stopAll() {
+		for (ExecutorService stage : stages) {
+			stage.shutdownNow();
+		}
+	}
+
+	/**
+	 * Tells each consuming worker of a queue that no more images will follow.
+	 * Gives up when a worker failed, as the queue may never be drained then.
+	 */
+	private void signalEndOfInput(BlockingQueue<Job> queue, int consumers)
+			throws InterruptedException, ExecutionException {
+		for (int i = 0; i < consumers; i++) {
+			while (!queue.offer(END_OF_INPUT, 100, TimeUnit.MILLISECONDS)) {
+				if (failure.get() != null) {
+					throw new ExecutionException(failure.get());
+				}
+			}
+		}
+	}
+
+	/**
+	 * An image or one of its variants on its way through the pipeline.
+	 */
+	private static class Job {
+
+		private final Image image;
+		private final long imageBytes;
+		private int variant;
+		private AtomicInteger pendingVariants;
+		private Mat result;
+
+		Job(Image image, long imageBytes) {
+			this.image = image;
+			this.imageBytes = imageBytes;
+		}
+	}
+
+	/**
+	 * Names the worker threads after their stage.
+	 */
+	private static class StageThreadFactory implements ThreadFactory {
+
+		private final String stage;
+		private final AtomicInteger count = new AtomicInteger();
+
+		StageThreadFactory(String stage) {
+			this.stage = stage;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, stage + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -1,17 +1,36 @@
 package com.murtaq.transformation;
 
-import static org.bytedeco.javacpp.opencv_imgcodecs.imwrite;
-
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import org.bytedeco.javacpp.opencv_core.Mat;
 
+import com.murtaq.jfr.EncodeEvent;
+import com.murtaq.jfr.JfrSupport;
+import com.murtaq.jfr.TransformEvent;
 import com.murtaq.main.Image;
 import com.murtaq.main.ImageProvider;
+import com.murtaq.metrics.JsonReport;
+import com.murtaq.metrics.LatencyHistogram;
+import com.murtaq.metrics.RunMetrics;
+import com.murtaq.output.EncoderSettings;
+import com.murtaq.output.FileOutputWriter;
+import com.murtaq.output.NpyWriter;
+import com.murtaq.output.OutputWriter;
+import com.murtaq.output.TarShardWriter;
+import com.murtaq.output.TensorFormat;
 import com.murtaq.transformations.ITransform;
+import com.murtaq.transformations.TransformContext;
+import com.murtaq.transformations.grid.CacheStatistics;
+import com.murtaq.transformations.grid.GridTransform;
+import com.murtaq.transformations.grid.WarpAccuracy;
+import com.murtaq.transformations.grid.WarpBackend;
+import com.murtaq.util.NativeMemoryTracker;
 
 /**
  * Transforms images.
@@ -20,21 +39,328 @@ public class Transformator {
 
 	private List<ITransform> transforms;
 	private File targetFile;
+	private int decodeThreads, transformThreads, encodeThreads;
+	private Parallelism parallelism;
+	private boolean fuseTransforms;
+	private long maxNativeMemory = Long.MAX_VALUE;
+	private int variants = 1;
+	private int cachedSizes = GridTransform.DEFAULT_CACHED_SIZES;
+	private long cacheBytes = GridTransform.DEFAULT_CACHE_BYTES;
+	private boolean seeded;
+	private long seed;
+	private int progressInterval = 10;
+	private File reportFile, prometheusFile;
+	private long shardSize;
+	private TensorFormat tensorFormat;
+	private EncoderSettings encoderSettings = new EncoderSettings();
+	private int targetHeight, targetWidth;
+	private WarpBackend warpBackend = WarpBackend.JAVA;
+	private WarpAccuracy warpAccuracy = WarpAccuracy.EXACT;
+	private boolean resume;
+	private RunManifest manifest;
+	private RunMetrics metrics;
+	private OutputWriter output;
+	private List<ITransform> chain;
 
 	public Transformator() {
 		transforms = new ArrayList<ITransform>();
 		targetFile = new File("");
+		decodeThreads = transformThreads = encodeThreads = 1;
+		parallelism = Parallelism.INTER_IMAGE;
 	}
 
 	public Transformator(ITransform[] transforms, File targetFile) {
 		this.targetFile = targetFile;
 		this.transforms = new ArrayList<ITransform>(Arrays.asList(transforms));
+		decodeThreads = transformThreads = encodeThreads = 1;
+		parallelism = Parallelism.INTER_IMAGE;
 	}
 
 	public void setTargetFile(File targetFile) {
 		this.targetFile = targetFile;
 	}
 
+	/**
+	 * Sets the number of worker threads for each stage of the transformation
+	 * pipeline. If all stages use a single thread, the images are processed
+	 * one after another on the calling thread.
+	 * 
+	 * @param decode
+	 *            The number of threads reading images from the disk.
+	 * @param transform
+	 *            The number of threads applying the transformations.
+	 * @param encode
+	 *            The number of threads writing images to the disk.
+	 */
+	public void setStageThreads(int decode, int transform, int encode) {
+		if (decode < 1 || transform < 1 || encode < 1) {
+			throw new IllegalArgumentException("Each pipeline stage needs at least one thread.");
+		}
+		this.decodeThreads = decode;
+		this.transformThreads = transform;
+		this.encodeThreads = encode;
+	}
+
+	/**
+	 * Sets whether the transform threads work on different images or together
+	 * on the same image.
+	 * 
+	 * @param parallelism
+	 *            The parallelism mode.
+	 */
+	public void setParallelism(Parallelism parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets the implementation used by all grid transformations to warp the
+	 * images.
+	 * 
+	 * @param backend
+	 *            The warp backend.
+	 */
+	public void setWarpBackend(WarpBackend backend) {
+		this.warpBackend = backend;
+		for (ITransform tf : transforms) {
+			if (tf instanceof GridTransform) {
+				((GridTransform) tf).setBackend(backend);
+			}
+		}
+	}
+
+	/**
+	 * Sets how exactly all grid transformations calculate the warped pixels
+	 * with the Java backend. The fast and vector modes change the output, so
+	 * they are part of the manifest signature.
+	 * 
+	 * @param accuracy
+	 *            The warp accuracy.
+	 */
+	public void setWarpAccuracy(WarpAccuracy accuracy) {
+		this.warpAccuracy = accuracy;
+		for (ITransform tf : transforms) {
+			if (tf instanceof GridTransform) {
+				((GridTransform) tf).setAccuracy(accuracy);
+			}
+		}
+	}
+
+	/**
+	 * Sets the size of the tiles large images are warped in by all grid
+	 * transformations.
+	 * 
+	 * @param tileSize
+	 *            The edge length of the tiles in pixels or 0 to warp whole
+	 *            images.
+	 */
+	public void setTileSize(int tileSize) {
+		for (ITransform tf : transforms) {
+			if (tf instanceof GridTransform) {
+				((GridTransform) tf).setTileSize(tileSize);
+			}
+		}
+	}
+
+	/**
+	 * Sets whether consecutive geometric transformations are fused, so that
+	 * each image is resampled once per group of them instead of once per
+	 * transformation.
+	 * 
+	 * @param fuseTransforms
+	 *            Whether to fuse the transformations.
+	 */
+	public void setFuseTransforms(boolean fuseTransforms) {
+		this.fuseTransforms = fuseTransforms;
+	}
+
+	/**
+	 * Sets the limits of the distortion caches of all grid transformations.
+	 * The distortions are cached per image size and variant, so the caches
+	 * hold one entry per variant for each image size.
+	 * 
+	 * @param maxSizes
+	 *            The maximum number of image sizes with cached distortions per
+	 *            transformation.
+	 * @param maxBytes
+	 *            The maximum number of bytes used by the cached distortions of
+	 *            each transformation.
+	 */
+	public void setDistortionCacheLimits(int maxSizes, long maxBytes) {
+		this.cachedSizes = maxSizes;
+		this.cacheBytes = maxBytes;
+		applyDistortionCacheLimits();
+	}
+
+	private void applyDistortionCacheLimits() {
+		int maxEntries = (int) Math.min(Integer.MAX_VALUE, (long) cachedSizes * variants);
+		for (ITransform tf : transforms) {
+			if (tf instanceof GridTransform) {
+				((GridTransform) tf).setDistortionCacheLimits(maxEntries, cacheBytes);
+			}
+		}
+	}
+
+	/**
+	 * Sets the budget for the native memory used by the images in flight, their
+	 * transformed results and the intermediate buffers, including the scratch
+	 * matrices of the transformations and the cached distortions and maps.
+	 * Reading further images blocks while the budget is exhausted. The memory
+	 * a transformation allocates for an admitted image is never refused, so
+	 * it can exceed the budget; it counts against the next images instead.
+	 * 
+	 * @param bytes
+	 *            The budget in bytes or Long.MAX_VALUE for no limit.
+	 */
+	public void setMaxNativeMemory(long bytes) {
+		if (bytes < 1) {
+			throw new IllegalArgumentException("The native memory budget must be positive.");
+		}
+		this.maxNativeMemory = bytes;
+	}
+
+	/**
+	 * Sets the number of transformed variants generated from each source
+	 * image. Each image is read once and all transformations are applied on it
+	 * once per variant, with separate random distortions for each variant. With
+	 * more than one variant, the outputs are named name_tf0 to name_tfN-1.
+	 * 
+	 * @param variants
+	 *            The number of variants per image.
+	 */
+	public void setVariants(int variants) {
+		if (variants < 1) {
+			throw new IllegalArgumentException("At least one variant per image is needed.");
+		}
+		this.variants = variants;
+		applyDistortionCacheLimits();
+	}
+
+	int getVariants() {
+		return variants;
+	}
+
+	/**
+	 * Sets the seed for all randomized transformations. The random values used
+	 * for an image are derived from the seed, the path of the image relative to
+	 * the source directory, the variant and the position of the transformation
+	 * in the chain. The results are thus reproducible regardless of the number
+	 * of threads and the order in which the images are processed.
+	 * 
+	 * @param seed
+	 *            The seed.
+	 */
+	public void setSeed(long seed) {
+		this.seeded = true;
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets how often the progress of a run is printed.
+	 * 
+	 * @param seconds
+	 *            The seconds between two progress lines or 0 to print none.
+	 */
+	public void setProgressInterval(int seconds) {
+		this.progressInterval = seconds;
+	}
+
+	/**
+	 * Sets the file the metrics of a run are written to as JSON document at
+	 * its end.
+	 * 
+	 * @param reportFile
+	 *            The file or null to write no report.
+	 */
+	public void setReportFile(File reportFile) {
+		this.reportFile = reportFile;
+	}
+
+	/**
+	 * Sets the file the metrics of a run are written to in the Prometheus text
+	 * format. The file is updated with each progress line and at the end of
+	 * the run.
+	 * 
+	 * @param prometheusFile
+	 *            The file or null to write no metrics.
+	 */
+	public void setPrometheusFile(File prometheusFile) {
+		this.prometheusFile = prometheusFile;
+	}
+
+	/**
+	 * Sets whether the transformed images are appended to tar shards in the
+	 * target directory instead of being written to files of their own.
+	 * 
+	 * @param bytes
+	 *            The size at which the next shard is started or 0 to write
+	 *            each image to its own file.
+	 */
+	public void setShardSize(long bytes) {
+		if (bytes < 0) {
+			throw new IllegalArgumentException("The shard size must not be negative.");
+		}
+		this.shardSize = bytes;
+	}
+
+	/**
+	 * Sets whether the transformed images are stored as arrays of a fixed
+	 * shape in a memory-mapped .npy file in the target directory instead of
+	 * being encoded.
+	 * 
+	 * @param format
+	 *            The shape and element type of the arrays or null to encode
+	 *            the images.
+	 */
+	public void setTensorFormat(TensorFormat format) {
+		this.tensorFormat = format;
+	}
+
+	/**
+	 * Sets the size all images are resized to before they are transformed.
+	 * 
+	 * @param height
+	 *            The height of the images or 0 to keep the size of the source
+	 *            images.
+	 * @param width
+	 *            The width of the images or 0 to keep the size of the source
+	 *            images.
+	 */
+	public void setTargetSize(int height, int width) {
+		this.targetHeight = height;
+		this.targetWidth = width;
+	}
+
+	/**
+	 * Sets the options of the encoders and the format of the outputs.
+	 * 
+	 * @param settings
+	 *            The encoder settings.
+	 */
+	public void setEncoderSettings(EncoderSettings settings) {
+		this.encoderSettings = settings;
+	}
+
+	/**
+	 * Sets whether images recorded as finished in the manifest of a previous
+	 * run are skipped. The manifest is only written when a target directory
+	 * is given.
+	 * 
+	 * @param resume
+	 *            Whether to resume the previous run.
+	 */
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+
+	/**
+	 * Returns the metrics of the last run.
+	 * 
+	 * @return The metrics or null, if no images were transformed yet.
+	 */
+	public RunMetrics getMetrics() {
+		return metrics;
+	}
+
 	/**
 	 * Transforms all images provided by the ImageProvider and stores them on
 	 * the disk at their assigned location.
@@ -44,39 +370,383 @@ public class Transformator {
 	 */
 	public void transformImages(ImageProvider provider) {
 		System.out.println("Transforming images...");
-		while (provider.hasNext()) {
-			Image image = provider.next();
-			Mat transformedImage = applyTransformations(image.getImageData());
-
-			String target;
-			File f = image.getFile();
-			if (targetFile.exists()) {
-				target = targetFile.getPath() + File.separator + image.getTargetPath() + File.separator + f.getName();
-				File parent = new File(target).getParentFile();
-				if (!parent.exists() && !parent.mkdirs()) {
-					throw new IllegalStateException("Couldn't create dir: " + parent);
-				}
+		provider.setTargetSize(targetHeight, targetWidth);
+		for (int i = 0; i < transforms.size(); i++) {
+			if (transforms.get(i) instanceof GridTransform) {
+				((GridTransform) transforms.get(i)).setStream(i);
+			}
+		}
+		chain = fuseTransforms ? TransformChainCompiler.compile(transforms) : transforms;
+		List<String> transformNames = new ArrayList<String>();
+		for (ITransform tf : chain) {
+			transformNames.add(tf.toString());
+		}
+		metrics = new RunMetrics(transformNames);
+		if (tensorFormat != null) {
+			try {
+				output = new NpyWriter(targetFile, tensorFormat, variants);
+			} catch (IOException e) {
+				throw new IllegalStateException("Couldn't create the .npy file: " + e.getMessage(), e);
+			}
+		} else if (shardSize > 0) {
+			output = new TarShardWriter(targetFile, shardSize, resume, encoderSettings);
+		} else {
+			output = new FileOutputWriter(targetFile, metrics.stage(RunMetrics.DIRECTORIES), encoderSettings);
+		}
+		manifest = null;
+		if (targetFile.isDirectory()) {
+			try {
+				manifest = new RunManifest(new File(targetFile, "manifest.tsv"), chainSignature(), resume,
+						output);
+			} catch (IOException e) {
+				closeOutput();
+				throw new IllegalStateException("Couldn't open the manifest: " + e.getMessage(), e);
+			}
+		}
+		int imageThreads = transformThreads;
+		ForkJoinPool bandPool = null;
+		if (parallelism == Parallelism.INTRA_IMAGE && transformThreads > 1) {
+			bandPool = new ForkJoinPool(transformThreads);
+			imageThreads = 1;
+		}
+		setBandPool(bandPool);
+		NativeMemoryBudget budget = new NativeMemoryBudget(maxNativeMemory);
+		NativeMemoryTracker.setListener(budget);
+		ProgressReporter reporter = new ProgressReporter(metrics, budget, progressInterval, prometheusFile);
+		reporter.start();
+		try {
+			if (decodeThreads == 1 && imageThreads == 1 && encodeThreads == 1) {
+				transformSerially(provider, budget);
 			} else {
-				String[] filename = f.getName().split("\\.");
-				target = f.getParentFile().getAbsolutePath() + File.separator + filename[0] + "_tf." + filename[1];
+				new TransformPipeline(this, budget, decodeThreads, imageThreads, encodeThreads).run(provider);
+			}
+		} finally {
+			setBandPool(null);
+			if (bandPool != null) {
+				bandPool.shutdown();
 			}
-			imwrite(target, transformedImage);
+			closeOutput();
+			metrics.finish();
+			reporter.stop();
+			NativeMemoryTracker.setListener(null);
 		}
 		System.out.println("Done.");
+		if (manifest != null && manifest.getSkipped() > 0) {
+			System.out.println("Skipped " + manifest.getSkipped() + " images finished in a previous run.");
+		}
+		System.out.println("Peak tracked native memory: " + budget.getPeakBytes() / (1024 * 1024) + " MB.");
+		printCacheStatistics();
+		printMetrics();
+	}
+
+	private void closeOutput() {
+		try {
+			output.close();
+			if (manifest != null) {
+				manifest.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Couldn't finish the output.", e);
+		}
+	}
+
+	/**
+	 * Describes everything that changes the outputs for the manifest, so that
+	 * a resumed run doesn't skip images transformed differently. Options that
+	 * only change how the work is done, like the threads, the tiles or the
+	 * memory limits, produce the same outputs and are left out. So are
+	 * options at their defaults, which keeps the manifests of earlier runs
+	 * valid.
+	 */
+	private String chainSignature() {
+		String signature = toString() + (seeded ? " seed=" + seed : "")
+				+ (targetHeight > 0 ? " size=" + targetHeight + "x" + targetWidth : "")
+				+ (fuseTransforms ? " fused" : "") + (warpBackend == WarpBackend.REMAP ? " backend=remap" : "")
+				+ (warpAccuracy == WarpAccuracy.FAST ? " accuracy=fast" : "")
+				+ (warpAccuracy == WarpAccuracy.VECTOR ? " accuracy=vector" + GridTransform.getVectorKernelWidth() : "")
+				+ (variants > 1 ? " variants=" + variants : "");
+		if (tensorFormat != null) {
+			signature += " npy=" + tensorFormat.getHeight() + "x" + tensorFormat.getWidth() + ":"
+					+ tensorFormat.getLayout();
+		}
+		String encoder = encoderSettings.toString();
+		return encoder.isEmpty() ? signature : signature + " " + encoder;
 	}
 
 	/**
-	 * Applies all transformations in the transforms list on the image.
+	 * Prints the throughput of the run and the time spent in each stage, and
+	 * writes the JSON report if requested.
+	 */
+	private void printMetrics() {
+		System.out.println(String.format("Transformed %d images into %d outputs in %.1f s (%.1f images/s, %.1f MB/s read).",
+				metrics.getImages(), metrics.getOutputs(), metrics.getElapsedSeconds(), metrics.getImagesPerSecond(),
+				metrics.getInputMegabytesPerSecond()));
+		for (Map.Entry<String, LatencyHistogram> stage : metrics.getStages().entrySet()) {
+			LatencyHistogram histogram = stage.getValue();
+			System.out.println(String.format("    %s: %.1f s total, %.2f ms mean, %.2f ms p99 (%d calls)", stage.getKey(),
+					histogram.getTotalNanos() / 1e9, histogram.getMeanNanos() / 1e6,
+					histogram.getPercentileNanos(99) / 1e6, histogram.getCount()));
+		}
+		if (reportFile != null) {
+			try {
+				JsonReport.write(metrics, reportFile);
+			} catch (IOException e) {
+				System.out.println("Couldn't write the report to \"" + reportFile.getAbsolutePath() + "\": " + e);
+			}
+		}
+	}
+
+	/**
+	 * Transforms the images one after another on the calling thread. Each
+	 * source image is released as soon as its last variant was transformed.
+	 */
+	private void transformSerially(ImageProvider provider, NativeMemoryBudget budget) {
+		Mat[] buffers = new Mat[] { new Mat(), new Mat() };
+		Mat transformedImage = new Mat();
+		try {
+			Image image;
+			while ((image = nextImage(provider)) != null) {
+				long reserved = provider.estimateDecodedSize(image);
+				try {
+					budget.reserve(reserved);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while transforming images.", e);
+				}
+				try {
+					decodeImage(provider, image);
+				} catch (RuntimeException e) {
+					budget.cancel(reserved);
+					throw e;
+				}
+				long imageBytes = budget.admit(reserved, image.getImageData());
+				for (int variant = 0; variant < variants; variant++) {
+					long before = NativeMemoryBudget.sizeOf(transformedImage, buffers);
+					applyTransformations(image.getImageData(), buffers, transformedImage,
+							createContext(image, variant));
+					budget.allocated(NativeMemoryBudget.sizeOf(transformedImage, buffers) - before);
+					if (variant == variants - 1) {
+						budget.allocated(-imageBytes);
+						image.release();
+					}
+					writeImage(image, variant, transformedImage);
+				}
+				budget.finished();
+			}
+		} finally {
+			budget.allocated(-NativeMemoryBudget.sizeOf(transformedImage, buffers));
+			transformedImage.close();
+			buffers[0].close();
+			buffers[1].close();
+			releaseBuffers();
+		}
+	}
+
+	/**
+	 * Takes the next image from the provider, which may have to search the
+	 * source directory for it. Images finished in a resumed run are skipped.
+	 * 
+	 * @param provider
+	 *            The provider for the images.
+	 * @return The image without image data or null, if all images were
+	 *         provided.
+	 */
+	Image nextImage(ImageProvider provider) {
+		long start = System.nanoTime();
+		Image image = provider.pollUndecoded();
+		while (image != null && manifest != null && manifest.isFinished(image, outputNames(image))) {
+			image = provider.pollUndecoded();
+		}
+		metrics.stage(RunMetrics.DISCOVERY).record(System.nanoTime() - start);
+		return image;
+	}
+
+	/**
+	 * Reads the image data of an image from the disk.
+	 * 
+	 * @param provider
+	 *            The provider of the image.
+	 * @param image
+	 *            The image to decode.
+	 */
+	void decodeImage(ImageProvider provider, Image image) {
+		long start = System.nanoTime();
+		provider.decode(image);
+		metrics.stage(RunMetrics.DECODE).record(System.nanoTime() - start);
+		metrics.imageRead(image.getEncodedSize());
+	}
+
+	/**
+	 * Creates the context for transforming a variant of the image.
 	 * 
 	 * @param image
-	 *            The image to transform.
-	 * @return The transformed image.
+	 *            The source image.
+	 * @param variant
+	 *            The variant that is generated.
+	 * @return The context.
 	 */
-	private Mat applyTransformations(Mat image) {
+	TransformContext createContext(Image image, int variant) {
+		String source = image.getFile().getPath();
+		if (!seeded) {
+			return new TransformContext(source, variant);
+		}
+		// Use the same key on all platforms, so that runs can be split over
+		// different machines
+		String imageKey = image.getFile().getName();
+		if (!image.getTargetPath().isEmpty()) {
+			imageKey = image.getTargetPath().replace(File.separatorChar, '/') + "/" + imageKey;
+		}
+		return new TransformContext(source, imageKey, variant, seed);
+	}
+
+	/**
+	 * Releases the scratch buffers the transformations hold for the calling
+	 * thread.
+	 */
+	void releaseBuffers() {
+		for (ITransform tf : chain) {
+			tf.releaseBuffers();
+		}
+	}
+
+	/**
+	 * Prints the usage of the distortion caches of all transformations that
+	 * have one.
+	 */
+	private void printCacheStatistics() {
+		for (int i = 0; i < transforms.size(); i++) {
+			if (transforms.get(i) instanceof GridTransform) {
+				CacheStatistics stats = ((GridTransform) transforms.get(i)).getDistortionCacheStatistics();
+				if (stats != null) {
+					System.out.println("Distortion cache of transformation " + (i + 1) + ": " + stats + ".");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the pool for intra image parallelism on all grid transforms.
+	 */
+	private void setBandPool(ForkJoinPool pool) {
 		for (ITransform tf : transforms) {
-			image = tf.applyOn(image);
+			if (tf instanceof GridTransform) {
+				((GridTransform) tf).setPool(pool);
+			}
+		}
+	}
+
+	/**
+	 * Writes the transformed image to its assigned location.
+	 * 
+	 * @param image
+	 *            The source image.
+	 * @param variant
+	 *            The variant of the image that was generated.
+	 * @param transformedImage
+	 *            The transformed image data.
+	 */
+	void writeImage(Image image, int variant, Mat transformedImage) {
+		String name = outputFileName(image, variant);
+		EncodeEvent event = JfrSupport.AVAILABLE ? EncodeEvent.start() : null;
+		long start = System.nanoTime();
+		long size;
+		try {
+			size = output.write(image, variant, name, transformedImage);
+		} catch (IOException e) {
+			throw new IllegalStateException("Couldn't write " + name + ": " + e.getMessage(), e);
+		}
+		metrics.stage(RunMetrics.ENCODE).record(System.nanoTime() - start);
+		metrics.outputWritten(size);
+		if (manifest != null) {
+			try {
+				manifest.record(image, variant, outputName(image, name));
+			} catch (IOException e) {
+				throw new IllegalStateException("Couldn't write the manifest: " + e.getMessage(), e);
+			}
+		}
+		if (event != null) {
+			event.complete(image.getFile().getPath(), name, size, transformedImage);
+		}
+	}
+
+	/**
+	 * Names the output of a variant. With more than one variant, the variant
+	 * is appended to the name of the source image, and so is _tf when the
+	 * output is written beside the source.
+	 * 
+	 * @param image
+	 *            The source image.
+	 * @param variant
+	 *            The variant of the image.
+	 * @return The file name of the output.
+	 */
+	private String outputFileName(Image image, int variant) {
+		String name = image.getFile().getName();
+		String suffix = variants > 1 ? "_tf" + variant : output.isBesideSource() ? "_tf" : "";
+		String extension = encoderSettings.getOutputExtension();
+		int dot = name.lastIndexOf('.');
+		boolean hasExtension = dot > 0 && dot < name.length() - 1;
+		// Files detected by their content may have no extension, which the
+		// encoder needs to pick the format
+		if (!hasExtension && extension == null && image.getFormat() != null) {
+			extension = image.getFormat().getExtension();
+		}
+		if (!suffix.isEmpty() || extension != null) {
+			String base = hasExtension ? name.substring(0, dot) : name;
+			name = base + suffix + "." + (extension != null ? extension : name.substring(dot + 1));
+		}
+		return name;
+	}
+
+	private static String outputName(Image image, String fileName) {
+		return image.getTargetPath().isEmpty() ? fileName
+				: image.getTargetPath().replace(File.separatorChar, '/') + "/" + fileName;
+	}
+
+	/**
+	 * Lists the outputs of all variants of an image as recorded in the
+	 * manifest, relative to the target directory.
+	 */
+	private String[] outputNames(Image image) {
+		String[] names = new String[variants];
+		for (int variant = 0; variant < variants; variant++) {
+			names[variant] = outputName(image, outputFileName(image, variant));
+		}
+		return names;
+	}
+
+	/**
+	 * Applies all transformations in the transforms list on the image. The
+	 * intermediate results alternate between the two buffers, which are only
+	 * reallocated when the image size changes.
+	 * 
+	 * @param image
+	 *            The image to transform.
+	 * @param buffers
+	 *            Two matrices owned by the calling thread for intermediate
+	 *            results.
+	 * @param transformedImage
+	 *            Receives the transformed image.
+	 * @param context
+	 *            Describes the variant of the image that is generated.
+	 */
+	void applyTransformations(Mat image, Mat[] buffers, Mat transformedImage, TransformContext context) {
+		if (chain.isEmpty()) {
+			image.copyTo(transformedImage);
+			return;
+		}
+		Mat src = image;
+		for (int i = 0; i < chain.size(); i++) {
+			Mat dst = i == chain.size() - 1 ? transformedImage : buffers[i % 2];
+			TransformEvent event = JfrSupport.AVAILABLE ? TransformEvent.start() : null;
+			long start = System.nanoTime();
+			chain.get(i).applyOn(src, dst, context);
+			metrics.transformStage(i).record(System.nanoTime() - start);
+			if (event != null) {
+				event.complete(context.getSource(), chain.get(i), context.getVariant(), src);
+			}
+			src = dst;
 		}
-		return image;
 	}
 
 	/**
@@ -17,9 +17,9 @@ public class FlipCreator extends TransformCreator {
 
 	@Override
 	ITransform build(String[] params) throws ParamParseException {
-		if (params[0] == "h") {
+		if (params[0].equals("h")) {
 			return new Flip(true, false);
-		} else if (params[0] == "v") {
+		} else if (params[0].equals("v")) {
 			return new Flip(false, true);
 		}
 		throw new ParamParseException(
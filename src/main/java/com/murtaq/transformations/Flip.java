@@ -1,5 +1,6 @@
 package com.murtaq.transformations;
 
+import org.bytedeco.javacpp.indexer.FloatIndexer;
 import org.bytedeco.javacpp.opencv_core.Mat;
 import static org.bytedeco.javacpp.opencv_core.flip;
 
@@ -7,7 +8,7 @@ import static org.bytedeco.javacpp.opencv_core.flip;
  * Flips the image in one of four directions: None, horizontal, vertical or
  * horizontal and vertical (180 degree rotation)
  */
-public class Flip extends ITransform {
+public class Flip extends ITransform implements IGeometricTransform {
 
 	private boolean horizontal, vertical;
 
@@ -18,6 +19,16 @@ public class Flip extends ITransform {
 
 	@Override
 	public Mat applyOn(Mat image) {
+		if (!horizontal && !vertical) {
+			return image;
+		}
+		Mat flippedImage = new Mat();
+		applyOn(image, flippedImage);
+		return flippedImage;
+	}
+
+	@Override
+	public void applyOn(Mat image, Mat dst) {
 		int flipDirection;
 		if (horizontal && vertical) {
 			flipDirection = -1;
@@ -26,11 +37,31 @@ public class Flip extends ITransform {
 		} else if (vertical) {
 			flipDirection = 1;
 		} else {
-			return image;
+			image.copyTo(dst);
+			return;
+		}
+		flip(image, dst, flipDirection);
+	}
+
+	@Override
+	public void fillMaps(Mat mapX, Mat mapY, TransformContext context) {
+		int height = mapX.rows();
+		int width = mapX.cols();
+		FloatIndexer indexX = mapX.createIndexer();
+		FloatIndexer indexY = mapY.createIndexer();
+		for (int i = 0; i < height; i++) {
+			for (int j = 0; j < width; j++) {
+				indexX.put(i, j, vertical ? width - 1 - j : j);
+				indexY.put(i, j, horizontal ? height - 1 - i : i);
+			}
 		}
-		Mat flippedImage = new Mat();
-		flip(image, flippedImage, flipDirection);
-		return flippedImage;
 	}
 
+	/**
+	 * Returns the flip in the notation of the command line.
+	 */
+	@Override
+	public String toString() {
+		return "flip:" + (horizontal ? "h" : "") + (vertical ? "v" : "") + (horizontal || vertical ? "" : "none");
+	}
 }
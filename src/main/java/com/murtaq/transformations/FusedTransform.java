@@ -0,0 +1,99 @@
+package com.murtaq.transformations;
+
+import static org.bytedeco.javacpp.opencv_core.BORDER_REPLICATE;
+import static org.bytedeco.javacpp.opencv_core.CV_32F;
+import static org.bytedeco.javacpp.opencv_imgproc.INTER_LINEAR;
+import static org.bytedeco.javacpp.opencv_imgproc.remap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.bytedeco.javacpp.opencv_core.Scalar;
+
+import com.murtaq.util.ScratchMats;
+
+/**
+ * Applies a chain of geometric transformations in a single resampling pass.
+ * The maps of the transformations are composed into one map, so that each
+ * image is sampled only once instead of once per transformation.
+ */
+public class FusedTransform extends ITransform {
+
+	private List<IGeometricTransform> transforms;
+	private final ScratchMats maps = new ScratchMats(6);
+
+	/**
+	 * Creates a new FusedTransform.
+	 * 
+	 * @param transforms
+	 *            The transformations in the order they would be applied.
+	 */
+	public FusedTransform(List<IGeometricTransform> transforms) {
+		this.transforms = new ArrayList<IGeometricTransform>(transforms);
+	}
+
+	@Override
+	public Mat applyOn(Mat image) {
+		Mat newImage = new Mat();
+		applyOn(image, newImage);
+		return newImage;
+	}
+
+	@Override
+	public void applyOn(Mat image, Mat dst) {
+		applyOn(image, dst, TransformContext.DEFAULT);
+	}
+
+	@Override
+	public void applyOn(Mat image, Mat dst, TransformContext context) {
+		int height = image.arrayHeight();
+		int width = image.arrayWidth();
+
+		Mat mapX = maps.get(0, height, width, CV_32F);
+		Mat mapY = maps.get(1, height, width, CV_32F);
+		Mat stepX = maps.get(2, height, width, CV_32F);
+		Mat stepY = maps.get(3, height, width, CV_32F);
+		Mat composedX = maps.get(4, height, width, CV_32F);
+		Mat composedY = maps.get(5, height, width, CV_32F);
+
+		// The last transformation determines where each pixel of the result
+		// comes from in its input, the transformations before it are
+		// composed by looking up their maps at these positions
+		transforms.get(transforms.size() - 1).fillMaps(mapX, mapY, context);
+		for (int i = transforms.size() - 2; i >= 0; i--) {
+			transforms.get(i).fillMaps(stepX, stepY, context);
+			remap(stepX, composedX, mapX, mapY, INTER_LINEAR, BORDER_REPLICATE, new Scalar());
+			remap(stepY, composedY, mapX, mapY, INTER_LINEAR, BORDER_REPLICATE, new Scalar());
+			Mat swap = mapX;
+			mapX = composedX;
+			composedX = swap;
+			swap = mapY;
+			mapY = composedY;
+			composedY = swap;
+		}
+		remap(image, dst, mapX, mapY, INTER_LINEAR, BORDER_REPLICATE, new Scalar());
+	}
+
+	@Override
+	public void releaseBuffers() {
+		maps.release();
+		for (IGeometricTransform tf : transforms) {
+			if (tf instanceof ITransform) {
+				((ITransform) tf).releaseBuffers();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		String desc = "fused(";
+		for (int i = 0; i < transforms.size(); i++) {
+			desc += transforms.get(i).toString();
+			if (i < transforms.size() - 1) {
+				desc += " -> ";
+			}
+		}
+		return desc + ")";
+	}
+}
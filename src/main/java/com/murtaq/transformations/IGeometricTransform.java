@@ -0,0 +1,26 @@
+package com.murtaq.transformations;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+
+/**
+ * Implemented by transformations that only move pixels without changing the
+ * image size or the pixel values. Such transformations can be described by a
+ * map holding the source position of each pixel, which allows chains of them
+ * to be combined into a single resampling pass.
+ */
+public interface IGeometricTransform {
+
+	/**
+	 * Fills the maps with the source position of each pixel of the transformed
+	 * image. The size of the maps is the size of the image to transform.
+	 * 
+	 * @param mapX
+	 *            Receives the source x-position of each pixel (CV_32F).
+	 * @param mapY
+	 *            Receives the source y-position of each pixel (CV_32F).
+	 * @param context
+	 *            Describes the output that is produced.
+	 */
+	void fillMaps(Mat mapX, Mat mapY, TransformContext context);
+
+}
@@ -9,7 +9,8 @@ import org.bytedeco.javacpp.opencv_core.Mat;
 public abstract class ITransform {
 
 	/**
-	 * Applies the transformation on an image.
+	 * Applies the transformation on an image. May be called by multiple threads
+	 * at once.
 	 * 
 	 * @param image
 	 *            The image to transform.
@@ -17,4 +18,48 @@ public abstract class ITransform {
 	 */
 	public abstract Mat applyOn(Mat image);
 
+	/**
+	 * Applies the transformation on an image and stores the result in the
+	 * destination matrix, which is only reallocated if its size or type does
+	 * not fit. Transformations should override this to write their result
+	 * directly, the default implementation copies the result of
+	 * {@link #applyOn(Mat)}.
+	 * 
+	 * @param image
+	 *            The image to transform.
+	 * @param dst
+	 *            Receives the transformed image. Must not be the image itself.
+	 */
+	public void applyOn(Mat image, Mat dst) {
+		Mat result = applyOn(image);
+		result.copyTo(dst);
+		if (result != image) {
+			result.close();
+		}
+	}
+
+	/**
+	 * Applies the transformation on an image for the given variant of it.
+	 * Randomized transformations should override this to produce a different
+	 * result for each variant, the default implementation ignores the context.
+	 * 
+	 * @param image
+	 *            The image to transform.
+	 * @param dst
+	 *            Receives the transformed image. Must not be the image itself.
+	 * @param context
+	 *            Describes the output that is produced.
+	 */
+	public void applyOn(Mat image, Mat dst, TransformContext context) {
+		applyOn(image, dst);
+	}
+
+	/**
+	 * Releases the native buffers the calling thread holds for this
+	 * transformation. Called by each thread that applied the transformation
+	 * once it has finished its work.
+	 */
+	public void releaseBuffers() {
+	}
+
 }
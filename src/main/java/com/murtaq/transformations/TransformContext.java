@@ -0,0 +1,154 @@
+package com.murtaq.transformations;
+
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+/**
+ * Describes which output of a source image is currently being produced. It is
+ * passed along the transformation chain, so that randomized transformations
+ * can use a separate distortion for each variant of an image.
+ * <p>
+ * If a seed is set, randomized transformations draw from random streams that
+ * only depend on the seed, the image and the variant. The results are then the
+ * same regardless of the order in which the images are processed.
+ */
+public class TransformContext {
+
+	/**
+	 * The context of the first and, by default, only variant of an image.
+	 */
+	public static final TransformContext DEFAULT = new TransformContext(0);
+
+	private final String source;
+	private final String imageKey;
+	private final int variant;
+	private final boolean seeded;
+	private final long seed;
+
+	/**
+	 * Creates a new context without a seed.
+	 * 
+	 * @param variant
+	 *            The index of the variant generated from the source image.
+	 */
+	public TransformContext(int variant) {
+		this("", variant);
+	}
+
+	/**
+	 * Creates a new context without a seed.
+	 * 
+	 * @param source
+	 *            The path of the source image, used to describe the image in
+	 *            diagnostics.
+	 * @param variant
+	 *            The index of the variant generated from the source image.
+	 */
+	public TransformContext(String source, int variant) {
+		this(source, "", variant, false, 0);
+	}
+
+	/**
+	 * Creates a new context with a seed.
+	 * 
+	 * @param imageKey
+	 *            Identifies the source image, i.e. its path relative to the
+	 *            source directory.
+	 * @param variant
+	 *            The index of the variant generated from the source image.
+	 * @param seed
+	 *            The seed of the whole run.
+	 */
+	public TransformContext(String imageKey, int variant, long seed) {
+		this(imageKey, imageKey, variant, seed);
+	}
+
+	/**
+	 * Creates a new context with a seed.
+	 * 
+	 * @param source
+	 *            The path of the source image, used to describe the image in
+	 *            diagnostics.
+	 * @param imageKey
+	 *            Identifies the source image, i.e. its path relative to the
+	 *            source directory.
+	 * @param variant
+	 *            The index of the variant generated from the source image.
+	 * @param seed
+	 *            The seed of the whole run.
+	 */
+	public TransformContext(String source, String imageKey, int variant, long seed) {
+		this(source, imageKey, variant, true, seed);
+	}
+
+	private TransformContext(String source, String imageKey, int variant, boolean seeded, long seed) {
+		this.source = source;
+		this.imageKey = imageKey;
+		this.variant = variant;
+		this.seeded = seeded;
+		this.seed = seed;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public int getVariant() {
+		return variant;
+	}
+
+	/**
+	 * Returns a random generator for randomness that belongs to the source
+	 * image, like a distortion generated for every image.
+	 * 
+	 * @param stream
+	 *            Identifies the transformation in the chain, so that each
+	 *            transformation gets an independent stream.
+	 * @return The random generator. Unseeded contexts return a randomly seeded
+	 *         one.
+	 */
+	public SplittableRandom imageRandom(int stream) {
+		if (!seeded) {
+			return new SplittableRandom();
+		}
+		long hash = hash(seed, stream);
+		byte[] key = imageKey.getBytes(StandardCharsets.UTF_8);
+		for (byte b : key) {
+			hash = hash(hash, b);
+		}
+		return new SplittableRandom(hash(hash, variant));
+	}
+
+	/**
+	 * Returns a random generator for randomness that is shared by all images of
+	 * the same size, like a distortion reused for these images.
+	 * 
+	 * @param stream
+	 *            Identifies the transformation in the chain, so that each
+	 *            transformation gets an independent stream.
+	 * @param height
+	 *            The height of the images.
+	 * @param width
+	 *            The width of the images.
+	 * @return The random generator. Unseeded contexts return a randomly seeded
+	 *         one.
+	 */
+	public SplittableRandom sizeRandom(int stream, int height, int width) {
+		if (!seeded) {
+			return new SplittableRandom();
+		}
+		return new SplittableRandom(hash(hash(hash(hash(seed, stream), height), width), variant));
+	}
+
+	/*
+	 * Combines the hash with the value and scrambles the bits with the
+	 * finalizer of the SplitMix64 generator.
+	 */
+	private static long hash(long hash, long value) {
+		long z = (hash ^ value) * 0x9E3779B97F4A7C15L + 0x632BE59BD9B4E019L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+}
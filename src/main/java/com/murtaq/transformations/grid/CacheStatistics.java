@@ -0,0 +1,37 @@
+package com.murtaq.transformations.grid;
+
+/**
+ * A snapshot of the usage of a cache.
+ */
+public class CacheStatistics {
+
+	private final long hits, misses, entries, bytes;
+
+	CacheStatistics(long hits, long misses, long entries, long bytes) {
+		this.hits = hits;
+		this.misses = misses;
+		this.entries = entries;
+		this.bytes = bytes;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getEntries() {
+		return entries;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		return hits + " hits, " + misses + " misses, " + entries + " entries using " + bytes + " bytes";
+	}
+}
@@ -0,0 +1,122 @@
+package com.murtaq.transformations.grid;
+
+import static org.bytedeco.javacpp.opencv_core.CV_64F;
+
+import org.bytedeco.javacpp.indexer.DoubleIndexer;
+import org.bytedeco.javacpp.opencv_core.Mat;
+
+/**
+ * The pixel changes of a grid transformation at the grid line intersections
+ * of one image. Only these values are read by the warps, so the delta matrices
+ * of any part of the image can be filled from it without asking the
+ * transformation again. It takes one element per grid line intersection
+ * instead of one per pixel.
+ */
+class DeltaGrid {
+
+	private final int height, width, gridSize;
+	private final int gridRows, gridCols;
+	private final Mat deltaX, deltaY;
+	private final DoubleIndexer xIndexer, yIndexer;
+
+	/**
+	 * Creates an empty grid for an image.
+	 * 
+	 * @param height
+	 *            The height of the image.
+	 * @param width
+	 *            The width of the image.
+	 * @param gridSize
+	 *            The pixel distance between grid lines.
+	 */
+	DeltaGrid(int height, int width, int gridSize) {
+		this.height = height;
+		this.width = width;
+		this.gridSize = gridSize;
+		this.gridRows = countGridLines(height, gridSize);
+		this.gridCols = countGridLines(width, gridSize);
+		this.deltaX = new Mat(gridRows, gridCols, CV_64F);
+		this.deltaY = new Mat(gridRows, gridCols, CV_64F);
+		this.xIndexer = deltaX.createIndexer();
+		this.yIndexer = deltaY.createIndexer();
+	}
+
+	/**
+	 * Returns the number of grid lines in one direction. The last grid line
+	 * lies on the last pixel, even if it is closer than the grid size to the
+	 * line before.
+	 * 
+	 * @param pixels
+	 *            The number of pixels in the direction.
+	 * @param gridSize
+	 *            The pixel distance between grid lines.
+	 * @return The number of grid lines.
+	 */
+	static int countGridLines(int pixels, int gridSize) {
+		return (pixels + gridSize - 2) / gridSize + 1;
+	}
+
+	/**
+	 * Returns the indexer receiving the pixel changes in x-direction, with one
+	 * element per grid line intersection.
+	 * 
+	 * @return The indexer.
+	 */
+	DoubleIndexer getXIndexer() {
+		return xIndexer;
+	}
+
+	/**
+	 * Returns the indexer receiving the pixel changes in y-direction, with one
+	 * element per grid line intersection.
+	 * 
+	 * @return The indexer.
+	 */
+	DoubleIndexer getYIndexer() {
+		return yIndexer;
+	}
+
+	int getGridSize() {
+		return gridSize;
+	}
+
+	/**
+	 * Fills delta matrices which cover a part of the image. Only the elements
+	 * at grid line intersections are written.
+	 * 
+	 * @param windowX
+	 *            Receives the pixel changes in x-direction.
+	 * @param windowY
+	 *            Receives the pixel changes in y-direction.
+	 * @param top
+	 *            The image row of the first row of the matrices.
+	 * @param left
+	 *            The image column of the first column of the matrices.
+	 */
+	void fillWindow(DoubleIndexer windowX, DoubleIndexer windowY, int top, int left) {
+		int bottom = top + (int) windowX.height();
+		int right = left + (int) windowX.width();
+		for (int gridY = (top + gridSize - 1) / gridSize; gridY < gridRows; gridY++) {
+			int posY = Math.min(gridY * gridSize, height - 1);
+			if (posY >= bottom) {
+				break;
+			}
+			for (int gridX = (left + gridSize - 1) / gridSize; gridX < gridCols; gridX++) {
+				int posX = Math.min(gridX * gridSize, width - 1);
+				if (posX >= right) {
+					break;
+				}
+				windowX.put(posY - top, posX - left, xIndexer.get(gridY, gridX));
+				windowY.put(posY - top, posX - left, yIndexer.get(gridY, gridX));
+			}
+		}
+	}
+
+	/**
+	 * Releases the native memory of the grid. It must not be used afterwards.
+	 */
+	void close() {
+		deltaX.close();
+		deltaY.close();
+	}
+}
@@ -0,0 +1,72 @@
+package com.murtaq.transformations.grid;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bytedeco.javacpp.indexer.DoubleIndexer;
+import org.bytedeco.javacpp.opencv_core.Mat;
+
+import com.murtaq.util.NativeMemoryTracker;
+
+/**
+ * A generated distortion, consisting of the normalized shifts in x- and
+ * y-direction for each grid line intersection. The memory of the grids is
+ * tracked by the {@link NativeMemoryTracker} until the distortion is closed.
+ */
+class Distortion {
+
+	private static final AtomicInteger nextId = new AtomicInteger();
+
+	private final int id;
+	private final Mat gridX, gridY;
+	private final DoubleIndexer xIndexer, yIndexer;
+	private boolean closed;
+
+	Distortion(Mat gridX, Mat gridY) {
+		this.id = nextId.incrementAndGet();
+		this.gridX = gridX;
+		this.gridY = gridY;
+		this.xIndexer = gridX.createIndexer();
+		this.yIndexer = gridY.createIndexer();
+		NativeMemoryTracker.allocated(getBytes());
+	}
+
+	/**
+	 * Returns an id that is unique for each generated distortion.
+	 * 
+	 * @return The id of the distortion.
+	 */
+	int getId() {
+		return id;
+	}
+
+	double getX(int gridY, int gridX) {
+		return xIndexer.get(gridY, gridX);
+	}
+
+	double getY(int gridY, int gridX) {
+		return yIndexer.get(gridY, gridX);
+	}
+
+	/**
+	 * Returns the native memory occupied by the grids.
+	 * 
+	 * @return The size in bytes.
+	 */
+	long getBytes() {
+		return gridX.total() * gridX.elemSize() + gridY.total() * gridY.elemSize();
+	}
+
+	/**
+	 * Releases the native memory of the grids. The distortion must not be used
+	 * afterwards.
+	 */
+	void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		NativeMemoryTracker.allocated(-getBytes());
+		gridX.close();
+		gridY.close();
+	}
+}
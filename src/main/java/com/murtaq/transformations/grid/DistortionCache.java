@@ -0,0 +1,133 @@
+package com.murtaq.transformations.grid;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Least recently used cache for the distortions of a transformation, keyed by
+ * image size, grid size and variant. Keeps the distortions of datasets with
+ * mixed image sizes from being regenerated every time the size changes. The cache is
+ * bounded by the number of entries and by the bytes used by their grids.
+ * Evicted distortions are handed back to the caller, which releases them once
+ * they are not in use anymore.
+ */
+class DistortionCache {
+
+	static final int DEFAULT_MAX_ENTRIES = 16;
+	static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+	private final Map<Key, Distortion> entries = new LinkedHashMap<Key, Distortion>(16, 0.75f, true);
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+	private long maxBytes = DEFAULT_MAX_BYTES;
+	private long bytes, hits, misses;
+
+	/**
+	 * Sets the limits of the cache and evicts entries exceeding them.
+	 * 
+	 * @param maxEntries
+	 *            The maximum number of cached distortions.
+	 * @param maxBytes
+	 *            The maximum number of bytes used by the cached distortions.
+	 * @return The evicted distortions.
+	 */
+	synchronized List<Distortion> setLimits(int maxEntries, long maxBytes) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		return evict();
+	}
+
+	/**
+	 * Returns the cached distortion for the given sizes.
+	 * 
+	 * @return The distortion or null, if none is cached.
+	 */
+	synchronized Distortion get(int imageHeight, int imageWidth, int gridSize, int variant) {
+		Distortion distortion = entries.get(new Key(imageHeight, imageWidth, gridSize, variant));
+		if (distortion == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return distortion;
+	}
+
+	/**
+	 * Adds a distortion to the cache, evicting the least recently used entries
+	 * if the cache limits are exceeded. Distortions larger than the byte limit
+	 * are not cached at all.
+	 * 
+	 * @return The evicted distortions.
+	 */
+	synchronized List<Distortion> put(int imageHeight, int imageWidth, int gridSize, int variant,
+			Distortion distortion) {
+		if (maxEntries <= 0 || distortion.getBytes() > maxBytes) {
+			return new ArrayList<Distortion>();
+		}
+		Distortion replaced = entries.put(new Key(imageHeight, imageWidth, gridSize, variant), distortion);
+		List<Distortion> evicted = new ArrayList<Distortion>();
+		if (replaced != null) {
+			bytes -= replaced.getBytes();
+			evicted.add(replaced);
+		}
+		bytes += distortion.getBytes();
+		evicted.addAll(evict());
+		return evicted;
+	}
+
+	/**
+	 * Tells whether the distortion is currently held by the cache.
+	 * 
+	 * @param distortion
+	 *            The distortion to look for.
+	 * @return Whether the distortion is cached.
+	 */
+	synchronized boolean contains(Distortion distortion) {
+		return entries.containsValue(distortion);
+	}
+
+	synchronized CacheStatistics getStatistics() {
+		return new CacheStatistics(hits, misses, entries.size(), bytes);
+	}
+
+	private List<Distortion> evict() {
+		List<Distortion> evicted = new ArrayList<Distortion>();
+		Iterator<Distortion> eldest = entries.values().iterator();
+		while (eldest.hasNext() && (entries.size() > maxEntries || bytes > maxBytes)) {
+			Distortion distortion = eldest.next();
+			bytes -= distortion.getBytes();
+			evicted.add(distortion);
+			eldest.remove();
+		}
+		return evicted;
+	}
+
+	private static class Key {
+
+		private final int imageHeight, imageWidth, gridSize, variant;
+
+		Key(int imageHeight, int imageWidth, int gridSize, int variant) {
+			this.imageHeight = imageHeight;
+			this.imageWidth = imageWidth;
+			this.gridSize = gridSize;
+			this.variant = variant;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((imageHeight * 31 + imageWidth) * 31 + gridSize) * 31 + variant;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return imageHeight == other.imageHeight && imageWidth == other.imageWidth && gridSize == other.gridSize
+					&& variant == other.variant;
+		}
+	}
+}
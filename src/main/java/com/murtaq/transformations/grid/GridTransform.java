@@ -1,148 +1,688 @@
 package com.murtaq.transformations.grid;
 
 import static org.bytedeco.javacpp.opencv_core.CV_64F;
+import static org.bytedeco.javacpp.opencv_core.CV_8U;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.bytedeco.javacpp.indexer.DoubleIndexer;
+import org.bytedeco.javacpp.indexer.FloatIndexer;
 import org.bytedeco.javacpp.indexer.UByteIndexer;
 import org.bytedeco.javacpp.opencv_core.Mat;
 
+import com.murtaq.jfr.GridEvent;
+import com.murtaq.jfr.JfrSupport;
+import com.murtaq.transformations.IGeometricTransform;
 import com.murtaq.transformations.ITransform;
+import com.murtaq.transformations.TransformContext;
+import com.murtaq.util.ScratchMats;
 
 /**
  * Performs the transformation for all grid based transformations.
+ * <p>
+ * If a tile size is set, images larger than it are warped tile by tile. The
+ * delta matrices then only cover a single tile and are filled from the
+ * distortion at the grid line intersections, so that their memory is bounded
+ * by the tile size instead of the image size. Every pixel is calculated the
+ * same way as without tiles, so the results are identical.
+ * <p>
+ * The Java backend warps the grid squares with its scalar loop. With
+ * {@link WarpAccuracy#VECTOR}, it warps the rows of squares wide enough for it
+ * with a {@link WarpKernel}, with {@link WarpAccuracy#FAST} it uses a
+ * fixed-point loop instead. The kernel and
+ * the fixed-point loop only handle 8-bit images. The scalar loop handles 8-bit,
+ * 16-bit and float images with a {@link WarpSampler} for the image type.
  */
-public class GridTransform extends ITransform {
+public class GridTransform extends ITransform implements IGeometricTransform {
+
+	/*
+	 * Number of bands per pool thread an image is split into when warping in
+	 * parallel. More bands than threads even out differences in band duration.
+	 */
+	private static final int BANDS_PER_THREAD = 4;
+
+	/**
+	 * The default number of image sizes the cache for generated distortions
+	 * holds distortions for.
+	 */
+	public static final int DEFAULT_CACHED_SIZES = DistortionCache.DEFAULT_MAX_ENTRIES;
+
+	/**
+	 * The default maximum number of bytes used by the distortions in the cache.
+	 */
+	public static final long DEFAULT_CACHE_BYTES = DistortionCache.DEFAULT_MAX_BYTES;
 
 	private IGridTransform transform;
+	private ForkJoinPool pool;
+	private WarpBackend backend = WarpBackend.JAVA;
+	private WarpAccuracy accuracy = WarpAccuracy.EXACT;
+	private int tileSize;
+	private final RemapWarp remapWarp = new RemapWarp();
+	private final ScratchMats deltas = new ScratchMats(2);
 
 	public GridTransform(IGridTransform transform) {
 		this.transform = transform;
 	}
 
+	/**
+	 * Sets the implementation used to warp the images.
+	 * 
+	 * @param backend
+	 *            The warp backend.
+	 */
+	public void setBackend(WarpBackend backend) {
+		this.backend = backend;
+	}
+
+	/**
+	 * Sets how exactly the Java backend calculates the warped pixels.
+	 * 
+	 * @param accuracy
+	 *            The accuracy of the Java backend.
+	 */
+	public void setAccuracy(WarpAccuracy accuracy) {
+		this.accuracy = accuracy;
+	}
+
+	/**
+	 * Returns the number of pixels the Vector API kernel processes at once.
+	 * Only grid squares at least as wide are warped with it, so the outputs of
+	 * {@link WarpAccuracy#VECTOR} depend on it.
+	 * 
+	 * @return The number of pixels or 0, if the kernel can't be used in the
+	 *         running JVM.
+	 */
+	public static int getVectorKernelWidth() {
+		return WarpKernel.VECTOR_WIDTH;
+	}
+
+	/**
+	 * Sets the size of the tiles larger images are warped in.
+	 * 
+	 * @param tileSize
+	 *            The edge length of the tiles in pixels, rounded down to a
+	 *            multiple of the grid size, or 0 to warp whole images.
+	 */
+	public void setTileSize(int tileSize) {
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * Sets the index of this transformation in the chain. Seeded runs derive
+	 * the random stream of the transformation from it.
+	 * 
+	 * @param index
+	 *            The index of the transformation.
+	 */
+	public void setStream(int index) {
+		synchronized (transform) {
+			transform.setStream(index);
+		}
+	}
+
+	/**
+	 * Sets the pool used to warp horizontal bands of each image in parallel.
+	 * 
+	 * @param pool
+	 *            The pool to use or null to warp on the calling thread.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Sets the limits of the cache for generated distortions. Has no effect on
+	 * transformations without such a cache.
+	 * 
+	 * @param maxEntries
+	 *            The maximum number of cached distortions.
+	 * @param maxBytes
+	 *            The maximum number of bytes used by the cached distortions.
+	 */
+	public void setDistortionCacheLimits(int maxEntries, long maxBytes) {
+		synchronized (transform) {
+			transform.setCacheLimits(maxEntries, maxBytes);
+		}
+	}
+
+	/**
+	 * Returns the usage of the cache for generated distortions.
+	 * 
+	 * @return The cache statistics or null, if the transformation has no
+	 *         cache.
+	 */
+	public CacheStatistics getDistortionCacheStatistics() {
+		synchronized (transform) {
+			return transform.getCacheStatistics();
+		}
+	}
+
 	@Override
 	public Mat applyOn(Mat image) {
+		Mat newImage = new Mat();
+		applyOn(image, newImage);
+		return newImage;
+	}
+
+	@Override
+	public void applyOn(Mat image, Mat dst) {
+		applyOn(image, dst, TransformContext.DEFAULT);
+	}
+
+	@Override
+	public void applyOn(Mat image, Mat dst, TransformContext context) {
+		if (tileSize > 0 && (image.arrayHeight() > tileSize || image.arrayWidth() > tileSize)) {
+			applyTiled(image, dst, context);
+			return;
+		}
+		if (backend == WarpBackend.REMAP) {
+			GridEvent event = JfrSupport.AVAILABLE ? GridEvent.start() : null;
+			remapWarp.applyOn(image, dst, transform, context);
+			if (event != null) {
+				event.complete(context.getSource(), transform, GridEvent.REMAP, transform.getGridSize(), image);
+			}
+			return;
+		}
 
 		int height = image.arrayHeight();
 		int width = image.arrayWidth();
 
-		Mat deltaX = new Mat(height, width, CV_64F);
-		Mat deltaY = new Mat(height, width, CV_64F);
+		DoubleIndexer indexDx = deltas.get(0, height, width, CV_64F).createIndexer();
+		DoubleIndexer indexDy = deltas.get(1, height, width, CV_64F).createIndexer();
+
+		// The grid transforms keep state about the last image, so only the
+		// (cheap) calculation of the delta matrices is done exclusively
+		int gridSize = fillDeltaMatrices(indexDx, indexDy, context, image);
+
+		dst.create(height, width, image.type());
+		GridEvent event = JfrSupport.AVAILABLE ? GridEvent.start() : null;
+		genNewImage(image, dst, indexDx, indexDy, gridSize);
+		if (event != null) {
+			event.complete(context.getSource(), transform, GridEvent.WARP, gridSize, image);
+		}
+	}
 
-		DoubleIndexer indexDx = deltaX.createIndexer();
-		DoubleIndexer indexDy = deltaY.createIndexer();
+	/**
+	 * Warps the image tile by tile. The distortion is taken from the
+	 * transformation once, so all tiles use the same one.
+	 * 
+	 * @param image
+	 *            The image to transform.
+	 * @param dst
+	 *            Receives the transformed image.
+	 * @param context
+	 *            Describes the output that is produced.
+	 */
+	private void applyTiled(Mat image, Mat dst, TransformContext context) {
+		int height = image.arrayHeight();
+		int width = image.arrayWidth();
 
-		transform.fillDeltaMatrices(indexDx, indexDy);
+		DeltaGrid grid = captureDeltaGrid(height, width, context, image);
+		int gridSize = grid.getGridSize();
+		// Tiles start on grid lines, so that no grid square is split
+		int tile = Math.max(1, tileSize / gridSize) * gridSize;
 
+		dst.create(height, width, image.type());
+		GridEvent event = JfrSupport.AVAILABLE ? GridEvent.start() : null;
 		try {
-			return genNewImage(image, indexDx, indexDy);
+			for (int top = 0; top < height; top += tile) {
+				int bottom = Math.min(top + tile, height);
+				for (int left = 0; left < width; left += tile) {
+					int right = Math.min(left + tile, width);
+					// The last grid squares of a tile interpolate towards the
+					// grid line after the tile
+					DoubleIndexer indexDx = deltas.get(0, Math.min(bottom, height - 1) - top + 1,
+							Math.min(right, width - 1) - left + 1, CV_64F).createIndexer();
+					DoubleIndexer indexDy = deltas.get(1, Math.min(bottom, height - 1) - top + 1,
+							Math.min(right, width - 1) - left + 1, CV_64F).createIndexer();
+					grid.fillWindow(indexDx, indexDy, top, left);
+					if (backend == WarpBackend.REMAP) {
+						remapWarp.applyOnTile(image, dst, indexDx, indexDy, gridSize, top, left, bottom, right);
+					} else {
+						warpRows(new Warp(image, dst, indexDx, indexDy, gridSize, top, left, right, accuracy),
+								top / gridSize, (bottom + gridSize - 1) / gridSize);
+					}
+				}
+			}
 		} finally {
-			deltaX.close();
-			deltaY.close();
+			grid.close();
+		}
+		if (event != null) {
+			event.complete(context.getSource(), transform, backend == WarpBackend.REMAP ? GridEvent.REMAP : GridEvent.WARP,
+					gridSize, image);
 		}
 	}
 
+	@Override
+	public void releaseBuffers() {
+		deltas.release();
+		remapWarp.releaseBuffers();
+	}
+
+	@Override
+	public void fillMaps(Mat mapX, Mat mapY, TransformContext context) {
+		int height = mapX.rows();
+		int width = mapX.cols();
+
+		DoubleIndexer indexDx = deltas.get(0, height, width, CV_64F).createIndexer();
+		DoubleIndexer indexDy = deltas.get(1, height, width, CV_64F).createIndexer();
+
+		int gridSize = fillDeltaMatrices(indexDx, indexDy, context, mapX);
+
+		RemapWarp.buildMaps(indexDx, indexDy, mapX.<FloatIndexer> createIndexer(),
+				mapY.<FloatIndexer> createIndexer(), gridSize);
+	}
+
+	/**
+	 * Lets the grid transformation fill the delta matrices for the image.
+	 * 
+	 * @param indexDx
+	 *            Receives the pixel changes in x-direction.
+	 * @param indexDy
+	 *            Receives the pixel changes in y-direction.
+	 * @param context
+	 *            Describes the output that is produced.
+	 * @param image
+	 *            The image the deltas are filled for, only used to describe it
+	 *            in flight recordings.
+	 * @return The grid size used for the image.
+	 */
+	private int fillDeltaMatrices(DoubleIndexer indexDx, DoubleIndexer indexDy, TransformContext context,
+			Mat image) {
+		GridEvent event = JfrSupport.AVAILABLE ? GridEvent.start() : null;
+		int gridSize;
+		synchronized (transform) {
+			transform.fillDeltaMatrices(indexDx, indexDy, context);
+			gridSize = transform.getGridSize();
+		}
+		if (event != null) {
+			event.complete(context.getSource(), transform, GridEvent.FILL_DELTAS, gridSize, image);
+		}
+		return gridSize;
+	}
+
+	/**
+	 * Lets the grid transformation calculate the distortion at the grid line
+	 * intersections of the image.
+	 * 
+	 * @param height
+	 *            The height of the image.
+	 * @param width
+	 *            The width of the image.
+	 * @param context
+	 *            Describes the output that is produced.
+	 * @param image
+	 *            The image the distortion is calculated for, only used to
+	 *            describe it in flight recordings.
+	 * @return The distortion, which has to be closed by the caller.
+	 */
+	private DeltaGrid captureDeltaGrid(int height, int width, TransformContext context, Mat image) {
+		GridEvent event = JfrSupport.AVAILABLE ? GridEvent.start() : null;
+		DeltaGrid grid;
+		synchronized (transform) {
+			transform.prepare(height, width, context);
+			grid = new DeltaGrid(height, width, transform.getGridSize());
+			transform.calcGridDeltas(grid.getXIndexer(), grid.getYIndexer());
+		}
+		if (event != null) {
+			event.complete(context.getSource(), transform, GridEvent.FILL_DELTAS, grid.getGridSize(), image);
+		}
+		return grid;
+	}
+
 	/**
 	 * Applies the grid based transformation specified by the transform field.
+	 * Splits the image into bands of grid rows which are warped in parallel, if
+	 * a pool is set. Each output pixel only depends on the source image and the
+	 * delta matrices, so the result is identical to the serial warp.
 	 * 
 	 * @param srcImage
 	 *            The image to transform.
+	 * @param newImage
+	 *            Receives the transformed image. Must have the size and type
+	 *            of the source image.
 	 * @param indexDx
 	 *            The pixel changes in x-direction.
 	 * @param indexDy
 	 *            The pixel changes in y-direction.
-	 * @return The transformed image.
-	 */
-	private Mat genNewImage(Mat srcImage, DoubleIndexer indexDx, DoubleIndexer indexDy) {
-		double targetX, targetY;
-		int targetXi, targetYi, targetXi1, targetYi1;
-		double deltaX, deltaY;
-		double w, h;
-		int nextI, nextJ;
-
-		int height = srcImage.arrayHeight();
-		int width = srcImage.arrayWidth();
-
-		int gridSize = transform.getGridSize();
-
-		Mat newImage = new Mat(height, width, srcImage.type());
-
-		UByteIndexer srcIndexer = srcImage.createIndexer();
-		UByteIndexer dstIndexer = newImage.createIndexer();
-
-		// Loop over all grid points
-		for (int i = 0; i < height; i += gridSize) {
-			for (int j = 0; j < width; j += gridSize) {
-				// Calculation of next grid points
-				nextI = i + gridSize;
-				nextJ = j + gridSize;
-				w = gridSize;
-				h = gridSize;
-				if (nextI >= height) {
-					nextI = height - 1;
-					h = nextI - i + 1;
-				}
-				if (nextJ >= width) {
-					nextJ = width - 1;
-					w = nextJ - j + 1;
-				}
-				// Loop over each pixel in each grid square
-				// H and W are height and width of the section
-				for (double di = 0; di < h; di++) {
-					for (double dj = 0; dj < w; dj++) {
-						// Calculation of delta value (change of position) for
-						// current pixel
-						deltaX = bilinearInterpolation(di / h, dj / w, indexDx.get(i, j), indexDx.get(i, nextJ),
-								indexDx.get(nextI, j), indexDx.get(nextI, nextJ));
-						deltaY = bilinearInterpolation(di / h, dj / w, indexDy.get(i, j), indexDy.get(i, nextJ),
-								indexDy.get(nextI, j), indexDy.get(nextI, nextJ));
-						targetX = j + dj + deltaX;
-						targetY = i + di + deltaY;
-						if (targetX > width - 1) {
-							targetX = width - 1;
-						}
-						if (targetY > height - 1) {
-							targetY = height - 1;
-						}
-						if (targetX < 0) {
-							targetX = 0;
-						}
-						if (targetY < 0) {
-							targetY = 0;
-						}
+	 * @param gridSize
+	 *            The pixel distance between grid lines.
+	 */
+	private void genNewImage(Mat srcImage, Mat newImage, DoubleIndexer indexDx, DoubleIndexer indexDy,
+			int gridSize) {
+		Warp warp = new Warp(srcImage, newImage, indexDx, indexDy, gridSize, 0, 0, srcImage.arrayWidth(), accuracy);
+		warpRows(warp, 0, (srcImage.arrayHeight() + gridSize - 1) / gridSize);
+	}
 
-						targetXi = (int) targetX;
-						targetYi = (int) targetY;
-
-						targetXi1 = (int) Math.ceil(targetX);
-						targetYi1 = (int) Math.ceil(targetY);
-
-						// Calculation and overwriting of color values channel
-						// by channel for the current pixel
-						if (srcImage.channels() == 1) {
-							byte target = (byte) bilinearInterpolation(targetY - targetYi, targetX - targetXi,
-									srcIndexer.get(targetYi, targetXi), srcIndexer.get(targetYi, targetXi1),
-									srcIndexer.get(targetYi1, targetXi), srcIndexer.get(targetYi1, targetXi1));
-							dstIndexer.put((long) (i + di), (long) (j + dj), target);
-						} else {
-							for (int ll = 0; ll < srcImage.channels(); ll++) {
-								byte target = (byte) bilinearInterpolation(targetY - targetYi, targetX - targetXi,
-										srcIndexer.get(targetYi, targetXi, ll), srcIndexer.get(targetYi, targetXi1, ll),
-										srcIndexer.get(targetYi1, targetXi, ll), srcIndexer.get(targetYi1, targetXi1, ll));
-								dstIndexer.put((long) (i + di), (long) (j + dj), ll, target);
+	/**
+	 * Warps the given rows of grid squares, in parallel bands if a pool is
+	 * set.
+	 */
+	private void warpRows(Warp warp, int firstGridRow, int endGridRow) {
+		if (pool == null) {
+			warp.warpBand(firstGridRow, endGridRow);
+		} else {
+			int minBand = Math.max(1, (endGridRow - firstGridRow) / (pool.getParallelism() * BANDS_PER_THREAD));
+			pool.invoke(new WarpBandTask(warp, firstGridRow, endGridRow, minBand));
+		}
+	}
+
+	/*
+	 * Calculates the bilinear interpolation for the pixel at position (x,y) See
+	 * https://en.wikipedia.org/wiki/Bilinear_interpolation
+	 */
+	static double bilinearInterpolation(double x, double y, double v11, double v12, double v21, double v22) {
+		return (v11 * (1 - y) + v12 * y) * (1 - x) + (v21 * (1 - y) + v22 * y) * x;
+	}
+
+	/**
+	 * Holds everything needed to warp a single image or a tile of it, so that
+	 * bands of it can be warped by different threads.
+	 */
+	private static class Warp {
+
+		/*
+		 * The fractional bits of the source positions in the fixed-point loop
+		 * and of the weights of the fractions in a grid square.
+		 */
+		private static final int POSITION_BITS = 10;
+		private static final int POSITION_ONE = 1 << POSITION_BITS;
+		private static final int FRACTION_BITS = 16;
+
+		private final Mat srcImage;
+		private final WarpSampler sampler;
+		// Only for 8-bit images, otherwise null
+		private final UByteIndexer srcIndexer, dstIndexer;
+		private final DoubleIndexer indexDx, indexDy;
+		private final int gridSize, height, width;
+		private final int top, left, right;
+
+		/*
+		 * For the fixed-point loop: the fractions dj / w of the columns of a
+		 * grid square of width w, indexed by w. Only the widths that occur are
+		 * filled, or null for the exact calculation.
+		 */
+		private final int[][] fractions;
+
+		// Whether squares wide enough are warped with the Vector API kernel
+		private final boolean vector;
+
+		/**
+		 * Creates the warp of a tile or, starting at 0 and spanning the whole
+		 * width, of the whole image. The delta matrices start at the first
+		 * pixel of the tile and reach up to the grid line after it.
+		 * 
+		 * @param top
+		 *            The first row of the tile, which lies on a grid line.
+		 * @param left
+		 *            The first column of the tile, which lies on a grid line.
+		 * @param right
+		 *            The column after the last column of the tile.
+		 * @param accuracy
+		 *            How exactly the pixels are calculated.
+		 */
+		Warp(Mat srcImage, Mat dstImage, DoubleIndexer indexDx, DoubleIndexer indexDy, int gridSize, int top,
+				int left, int right, WarpAccuracy accuracy) {
+			this.srcImage = srcImage;
+			this.sampler = WarpSampler.create(srcImage, dstImage);
+			if (srcImage.depth() == CV_8U) {
+				this.srcIndexer = srcImage.createIndexer();
+				this.dstIndexer = dstImage.createIndexer();
+			} else {
+				this.srcIndexer = null;
+				this.dstIndexer = null;
+			}
+			this.indexDx = indexDx;
+			this.indexDy = indexDy;
+			this.gridSize = gridSize;
+			this.height = srcImage.arrayHeight();
+			this.width = srcImage.arrayWidth();
+			this.top = top;
+			this.left = left;
+			this.right = right;
+			this.vector = accuracy == WarpAccuracy.VECTOR;
+			if (accuracy == WarpAccuracy.FAST && srcIndexer != null) {
+				// All squares are as wide as the grid size, except for the last
+				// one of each row. Other than 8-bit images use the exact loop.
+				fractions = new int[gridSize + 1][];
+				fractions[gridSize] = createFractions(gridSize);
+				fractions[(width - 1) % gridSize + 1] = createFractions((width - 1) % gridSize + 1);
+			} else {
+				fractions = null;
+			}
+		}
+
+		/**
+		 * Creates the table of the fractions dj / w for a grid square of width
+		 * w, with {@link #FRACTION_BITS} fractional bits.
+		 */
+		private static int[] createFractions(int w) {
+			int[] table = new int[w];
+			for (int dj = 0; dj < w; dj++) {
+				table[dj] = (int) Math.round((double) dj * (1 << FRACTION_BITS) / w);
+			}
+			return table;
+		}
+
+		/**
+		 * Warps all pixels in the given rows of grid squares.
+		 * 
+		 * @param firstGridRow
+		 *            The first row of grid squares to warp.
+		 * @param endGridRow
+		 *            The row of grid squares after the last one to warp.
+		 */
+		void warpBand(int firstGridRow, int endGridRow) {
+			double targetX, targetY;
+			int targetXi, targetYi, targetXi1, targetYi1;
+			double deltaX, deltaY;
+			double w, h;
+			int nextI, nextJ;
+			int y, x, nextY, nextX;
+			long srcLeft, srcRight, srcTop, srcBottom, dstOffset;
+			WarpKernel kernel = vector && srcIndexer != null ? WarpKernel.create(srcIndexer) : null;
+			double[] cornersX = new double[4], cornersY = new double[4];
+
+			int endI = Math.min(height, endGridRow * gridSize);
+
+			// Loop over all grid points
+			for (int i = firstGridRow * gridSize; i < endI; i += gridSize) {
+				for (int j = left; j < right; j += gridSize) {
+					// Calculation of next grid points
+					nextI = i + gridSize;
+					nextJ = j + gridSize;
+					w = gridSize;
+					h = gridSize;
+					if (nextI >= height) {
+						nextI = height - 1;
+						h = nextI - i + 1;
+					}
+					if (nextJ >= width) {
+						nextJ = width - 1;
+						w = nextJ - j + 1;
+					}
+					// Positions in the delta matrices of the tile
+					y = i - top;
+					x = j - left;
+					nextY = nextI - top;
+					nextX = nextJ - left;
+					if (fractions != null) {
+						warpSquareFixed(i, j, (int) h, (int) w, y, x, nextY, nextX);
+						continue;
+					}
+					cornersX[0] = indexDx.get(y, x);
+					cornersX[1] = indexDx.get(y, nextX);
+					cornersX[2] = indexDx.get(nextY, x);
+					cornersX[3] = indexDx.get(nextY, nextX);
+					cornersY[0] = indexDy.get(y, x);
+					cornersY[1] = indexDy.get(y, nextX);
+					cornersY[2] = indexDy.get(nextY, x);
+					cornersY[3] = indexDy.get(nextY, nextX);
+					if (kernel != null && w >= kernel.getMinimumWidth()) {
+						for (int di = 0; di < h; di++) {
+							kernel.warpRow(srcIndexer, dstIndexer, srcImage.channels(), height, width, i + di, j, (int) w,
+									di / h, cornersX, cornersY);
+						}
+						continue;
+					}
+					// Loop over each pixel in each grid square
+					// H and W are height and width of the section
+					for (double di = 0; di < h; di++) {
+						dstOffset = (i + (long) di) * sampler.dstRowStride + j * sampler.dstPixelStride;
+						for (double dj = 0; dj < w; dj++, dstOffset += sampler.dstPixelStride) {
+							// Calculation of delta value (change of position) for
+							// current pixel
+							deltaX = bilinearInterpolation(di / h, dj / w, cornersX[0], cornersX[1], cornersX[2],
+									cornersX[3]);
+							deltaY = bilinearInterpolation(di / h, dj / w, cornersY[0], cornersY[1], cornersY[2],
+									cornersY[3]);
+							targetX = j + dj + deltaX;
+							targetY = i + di + deltaY;
+							if (targetX > width - 1) {
+								targetX = width - 1;
 							}
+							if (targetY > height - 1) {
+								targetY = height - 1;
+							}
+							if (targetX < 0) {
+								targetX = 0;
+							}
+							if (targetY < 0) {
+								targetY = 0;
+							}
+
+							targetXi = (int) targetX;
+							targetYi = (int) targetY;
+
+							targetXi1 = (int) Math.ceil(targetX);
+							targetYi1 = (int) Math.ceil(targetY);
+
+							// Calculation and overwriting of color values for the
+							// current pixel
+							srcLeft = targetXi * sampler.srcPixelStride;
+							srcRight = targetXi1 * sampler.srcPixelStride;
+							srcTop = targetYi * sampler.srcRowStride;
+							srcBottom = targetYi1 * sampler.srcRowStride;
+							sampler.blend(dstOffset, srcTop + srcLeft, srcTop + srcRight, srcBottom + srcLeft,
+									srcBottom + srcRight, targetX - targetXi, targetY - targetYi);
 						}
 					}
 				}
 			}
 		}
-		return newImage;
+
+		/**
+		 * Warps all pixels of a grid square in fixed-point arithmetic. The
+		 * pixel changes are interpolated between the corners of the square
+		 * once per row in double precision and then added up along the row
+		 * with the fractions of the columns from the table. The source pixels
+		 * are blended with integer weights of {@link #POSITION_BITS} bits, so
+		 * the results differ from the exact calculation by at most one.
+		 * 
+		 * @param i
+		 *            The image row of the top left corner of the square.
+		 * @param j
+		 *            The image column of the top left corner of the square.
+		 * @param h
+		 *            The height of the square.
+		 * @param w
+		 *            The width of the square.
+		 * @param y
+		 *            The row of the top corners in the delta matrices.
+		 * @param x
+		 *            The column of the left corners in the delta matrices.
+		 * @param nextY
+		 *            The row of the bottom corners in the delta matrices.
+		 * @param nextX
+		 *            The column of the right corners in the delta matrices.
+		 */
+		private void warpSquareFixed(int i, int j, int h, int w, int y, int x, int nextY, int nextX) {
+			int[] columnFractions = fractions[w];
+			double topLeftX = indexDx.get(y, x), topRightX = indexDx.get(y, nextX);
+			double bottomLeftX = indexDx.get(nextY, x), bottomRightX = indexDx.get(nextY, nextX);
+			double topLeftY = indexDy.get(y, x), topRightY = indexDy.get(y, nextX);
+			double bottomLeftY = indexDy.get(nextY, x), bottomRightY = indexDy.get(nextY, nextX);
+
+			int channels = srcImage.channels();
+			long srcRowStride = srcIndexer.strides()[0], srcPixelStride = srcIndexer.strides()[1];
+			long dstRowStride = dstIndexer.strides()[0], dstPixelStride = dstIndexer.strides()[1];
+			int maxX = (width - 1) << POSITION_BITS;
+			int maxY = (height - 1) << POSITION_BITS;
+
+			for (int di = 0; di < h; di++) {
+				// The pixel changes at the left and right end of the row
+				double fracY = (double) di / h;
+				double leftX = topLeftX + (bottomLeftX - topLeftX) * fracY;
+				double rightX = topRightX + (bottomRightX - topRightX) * fracY;
+				double leftY = topLeftY + (bottomLeftY - topLeftY) * fracY;
+				double rightY = topRightY + (bottomRightY - topRightY) * fracY;
+
+				// Source position of the first pixel and its change over the
+				// whole square
+				int startX = (int) Math.round((j + leftX) * POSITION_ONE);
+				int startY = (int) Math.round((i + di + leftY) * POSITION_ONE);
+				long spanX = Math.round((rightX - leftX) * POSITION_ONE);
+				long spanY = Math.round((rightY - leftY) * POSITION_ONE);
+
+				long dstOffset = (i + di) * dstRowStride + j * dstPixelStride;
+				for (int dj = 0; dj < w; dj++, dstOffset += dstPixelStride) {
+					int targetX = startX + (dj << POSITION_BITS) + (int) (spanX * columnFractions[dj] >> FRACTION_BITS);
+					int targetY = startY + (int) (spanY * columnFractions[dj] >> FRACTION_BITS);
+					targetX = Math.min(Math.max(targetX, 0), maxX);
+					targetY = Math.min(Math.max(targetY, 0), maxY);
+
+					int weightX = targetX & (POSITION_ONE - 1);
+					int weightY = targetY & (POSITION_ONE - 1);
+					long left = (targetX >> POSITION_BITS) * srcPixelStride;
+					long right = weightX != 0 ? left + srcPixelStride : left;
+					long top = (targetY >> POSITION_BITS) * srcRowStride;
+					long bottom = weightY != 0 ? top + srcRowStride : top;
+
+					for (int c = 0; c < channels; c++) {
+						int upper = srcIndexer.get(top + left + c) * (POSITION_ONE - weightX)
+								+ srcIndexer.get(top + right + c) * weightX;
+						int lower = srcIndexer.get(bottom + left + c) * (POSITION_ONE - weightX)
+								+ srcIndexer.get(bottom + right + c) * weightX;
+						dstIndexer.put(dstOffset + c,
+								(upper * (POSITION_ONE - weightY) + lower * weightY) >> (2 * POSITION_BITS));
+					}
+				}
+			}
+		}
 	}
 
-	/*
-	 * Calculates the bilinear interpolation for the pixel at position (x,y) See
-	 * https://en.wikipedia.org/wiki/Bilinear_interpolation
+	/**
+	 * Splits a band of grid rows in halves until it is small enough to be
+	 * warped directly.
 	 */
-	private double bilinearInterpolation(double x, double y, double v11, double v12, double v21, double v22) {
-		return (v11 * (1 - y) + v12 * y) * (1 - x) + (v21 * (1 - y) + v22 * y) * x;
+	@SuppressWarnings("serial")
+	private static class WarpBandTask extends RecursiveAction {
+
+		private final Warp warp;
+		private final int firstGridRow, endGridRow, minBand;
+
+		WarpBandTask(Warp warp, int firstGridRow, int endGridRow, int minBand) {
+			this.warp = warp;
+			this.firstGridRow = firstGridRow;
+			this.endGridRow = endGridRow;
+			this.minBand = minBand;
+		}
+
+		@Override
+		protected void compute() {
+			if (endGridRow - firstGridRow <= minBand) {
+				warp.warpBand(firstGridRow, endGridRow);
+				return;
+			}
+			int middle = (firstGridRow + endGridRow) >>> 1;
+			invokeAll(new WarpBandTask(warp, firstGridRow, middle, minBand),
+					new WarpBandTask(warp, middle, endGridRow, minBand));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return transform.toString();
 	}
 }
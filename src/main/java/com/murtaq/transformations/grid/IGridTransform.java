@@ -2,13 +2,16 @@ package com.murtaq.transformations.grid;
 
 import org.bytedeco.javacpp.indexer.DoubleIndexer;
 
+import com.murtaq.transformations.TransformContext;
+
 /**
  * Base class for all grid based transformations.
  */
 abstract class IGridTransform {
 
 	private final int gridSize;
-	private int imageHeight, imageWidth;
+	private int imageHeight, imageWidth, stream;
+	private TransformContext context = TransformContext.DEFAULT;
 
 	IGridTransform(int gridSize) {
 		this.gridSize = gridSize;
@@ -24,13 +27,94 @@ abstract class IGridTransform {
 	 *            The indexer for the x-direction.
 	 * @param deltaY
 	 *            The indexer for the y-direction.
+	 * @param context
+	 *            Describes the output that is produced.
 	 */
-	void fillDeltaMatrices(DoubleIndexer deltaX, DoubleIndexer deltaY) {
-		imageHeight = (int) deltaX.height();
-		imageWidth = (int) deltaX.width();
+	void fillDeltaMatrices(DoubleIndexer deltaX, DoubleIndexer deltaY, TransformContext context) {
+		prepare((int) deltaX.height(), (int) deltaX.width(), context);
 		calcDeltaMatrices(deltaX, deltaY);
 	}
 
+	/**
+	 * Prepares the distortion for an image of the given size without filling
+	 * any delta matrices.
+	 * 
+	 * @param height
+	 *            The height of the image.
+	 * @param width
+	 *            The width of the image.
+	 * @param context
+	 *            Describes the output that is produced.
+	 */
+	void prepare(int height, int width, TransformContext context) {
+		imageHeight = height;
+		imageWidth = width;
+		this.context = context;
+		prepareDistortion();
+	}
+
+	/**
+	 * Called whenever a new image is about to be transformed, after the image
+	 * size and context have been updated. Transformations with a generated
+	 * distortion can (re-)generate it here.
+	 */
+	protected void prepareDistortion() {
+	}
+
+	/**
+	 * Tells whether the delta matrices only depend on the image size and the
+	 * variant, so that results derived from them can be reused for further
+	 * images of the same size. This holds as long as {@link #getDistortionVersion()} does not
+	 * change.
+	 * 
+	 * @return Whether the distortion stays the same for images of equal size.
+	 */
+	boolean isDistortionStatic() {
+		return true;
+	}
+
+	/**
+	 * Returns a counter that changes whenever a new distortion was generated.
+	 * 
+	 * @return The current version of the distortion.
+	 */
+	int getDistortionVersion() {
+		return 0;
+	}
+
+	/**
+	 * Sets the index of the random stream of this transformation, which keeps
+	 * the random streams of multiple transformations in one chain apart.
+	 * 
+	 * @param stream
+	 *            The index of the transformation in the chain.
+	 */
+	void setStream(int stream) {
+		this.stream = stream;
+	}
+
+	/**
+	 * Sets the limits of the cache for generated distortions, if the
+	 * transformation has one.
+	 * 
+	 * @param maxEntries
+	 *            The maximum number of cached distortions.
+	 * @param maxBytes
+	 *            The maximum number of bytes used by the cached distortions.
+	 */
+	void setCacheLimits(int maxEntries, long maxBytes) {
+	}
+
+	/**
+	 * Returns the usage of the cache for generated distortions.
+	 * 
+	 * @return The cache statistics or null, if the transformation has no
+	 *         cache.
+	 */
+	CacheStatistics getCacheStatistics() {
+		return null;
+	}
+
 	/**
 	 * Calculates the distortion (= change in pixel positions) for the delta
 	 * matrices.
@@ -42,6 +126,29 @@ abstract class IGridTransform {
 	 */
 	protected abstract void calcDeltaMatrices(DoubleIndexer deltaX, DoubleIndexer deltaY);
 
+	/**
+	 * Calculates the distortion at the grid line intersections only, with one
+	 * element per intersection instead of one per pixel.
+	 * 
+	 * @param gridX
+	 *            The indexer for the x-direction, sized to the number of grid
+	 *            lines.
+	 * @param gridY
+	 *            The indexer for the y-direction, sized to the number of grid
+	 *            lines.
+	 */
+	protected abstract void calcGridDeltas(DoubleIndexer gridX, DoubleIndexer gridY);
+
+	/**
+	 * Returns the grid size given on creation, which is -1 if the grid size is
+	 * calculated from the image size.
+	 * 
+	 * @return The configured grid size.
+	 */
+	protected int getConfiguredGridSize() {
+		return gridSize;
+	}
+
 	public int getGridSize() {
 		if (gridSize == -1) {
 			return calcGridSize(imageHeight, imageWidth);
@@ -72,4 +179,12 @@ abstract class IGridTransform {
 	protected int getImageWidth() {
 		return imageWidth;
 	}
+
+	protected TransformContext getContext() {
+		return context;
+	}
+
+	protected int getStream() {
+		return stream;
+	}
 }
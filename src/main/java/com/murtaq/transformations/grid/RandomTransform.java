@@ -7,18 +7,26 @@ import static org.bytedeco.javacpp.opencv_core.normalize;
 // import static org.bytedeco.javacpp.opencv_core.abs;
 import static org.bytedeco.javacpp.opencv_imgproc.Sobel;
 
+import java.util.List;
+import java.util.SplittableRandom;
+
 import org.bytedeco.javacpp.opencv_core.Mat;
-import org.bytedeco.javacpp.indexer.DoubleIndexer;
+
+import com.murtaq.jfr.DistortionEvent;
+import com.murtaq.jfr.JfrSupport;
 
 /**
  * Randomly distorts the image by generating a distortion matrix for the grid
- * line intersection pixels.
+ * line intersection pixels. Unless a new distortion matrix is generated for
+ * each image, the distortions of recently seen image sizes are cached. Each
+ * variant of an image gets its own distortion.
  */
 public class RandomTransform extends SimpleGridTransform {
 
-	private DoubleIndexer xIndexer, yIndexer;
+	private Distortion distortion;
+	private final DistortionCache cache = new DistortionCache();
 	private double scale;
-	private int lastImageHeight, lastImageWidth;
+	private int lastImageHeight, lastImageWidth, lastVariant;
 	private boolean regenerateDistMat;
 
 	/**
@@ -37,32 +45,75 @@ public class RandomTransform extends SimpleGridTransform {
 		super(gridSize);
 		this.scale = scale;
 		this.regenerateDistMat = regenerateDistMat;
-		initNewDistortion();
 	}
 
 	/**
 	 * Generates a new distortion matrix for the image and stores the result in
-	 * the x and yIndexer fields.
+	 * the distortion field.
+	 * 
+	 * @param random
+	 *            The random generator to draw the distortion from.
 	 */
-	private void initNewDistortion() {
+	private void initNewDistortion(SplittableRandom random) {
+		DistortionEvent event = JfrSupport.AVAILABLE ? DistortionEvent.start() : null;
 		int gridHeight = calcGridPoints(getImageHeight(), getGridSize());
 		int gridWidth = calcGridPoints(getImageWidth(), getGridSize());
 
 		lastImageHeight = getImageHeight();
 		lastImageWidth = getImageWidth();
+		lastVariant = getContext().getVariant();
 
-		Mat grid = generateDistortedNoise(gridHeight, gridWidth);
+		Mat grid = generateDistortedNoise(gridHeight, gridWidth, random);
 		Mat gridX = new Mat(gridHeight, gridWidth, CV_64F);
 		Mat gridY = new Mat(gridHeight, gridWidth, CV_64F);
 
 		Sobel(grid, gridX, CV_64F, 1, 0);
 		Sobel(grid, gridY, CV_64F, 0, 1);
+		grid.close();
+
+		normalizeGrid(gridX);
+		normalizeGrid(gridY);
+
+		replaceDistortion(new Distortion(gridX, gridY));
+		if (event != null) {
+			event.complete(getContext().getSource(), this, lastImageHeight, lastImageWidth, getGridSize(),
+					gridHeight * gridWidth, lastVariant);
+		}
+	}
+
+	/**
+	 * Scales the values of the grid to the range [-1, 1].
+	 */
+	private void normalizeGrid(Mat grid) {
+		Mat unnormalized = grid.clone();
+		Mat noMask = new Mat();
+		normalize(unnormalized, grid, -1.0, 1.0, NORM_MINMAX, CV_64F, noMask);
+		unnormalized.close();
+		noMask.close();
+	}
 
-		normalize(gridX.clone(), gridX, -1.0, 1.0, NORM_MINMAX, CV_64F, new Mat());
-		normalize(gridY.clone(), gridY, -1.0, 1.0, NORM_MINMAX, CV_64F, new Mat());
+	/**
+	 * Makes the distortion the current one and releases the previous
+	 * distortion, unless it is kept in the cache.
+	 */
+	private void replaceDistortion(Distortion next) {
+		Distortion previous = distortion;
+		distortion = next;
+		if (previous != null && previous != next && !cache.contains(previous)) {
+			previous.close();
+		}
+	}
 
-		xIndexer = gridX.createIndexer();
-		yIndexer = gridY.createIndexer();
+	/**
+	 * Releases distortions evicted from the cache, unless one of them is the
+	 * current distortion.
+	 */
+	private void release(List<Distortion> evicted) {
+		for (Distortion d : evicted) {
+			if (d != distortion) {
+				d.close();
+			}
+		}
 	}
 
 	/**
@@ -88,20 +139,60 @@ public class RandomTransform extends SimpleGridTransform {
 	}
 
 	@Override
-	protected void calcDeltaMatrices(DoubleIndexer deltaX, DoubleIndexer deltaY) {
-		if (regenerateDistMat || getImageHeight() != lastImageHeight || getImageWidth() != lastImageWidth) {
-			initNewDistortion();
+	protected void prepareDistortion() {
+		int variant = getContext().getVariant();
+		if (regenerateDistMat) {
+			initNewDistortion(getContext().imageRandom(getStream()));
+		} else if (distortion == null || getImageHeight() != lastImageHeight || getImageWidth() != lastImageWidth
+				|| variant != lastVariant) {
+			Distortion cached = cache.get(getImageHeight(), getImageWidth(), getGridSize(), variant);
+			if (cached != null) {
+				replaceDistortion(cached);
+				lastImageHeight = getImageHeight();
+				lastImageWidth = getImageWidth();
+				lastVariant = variant;
+			} else {
+				initNewDistortion(getContext().sizeRandom(getStream(), getImageHeight(), getImageWidth()));
+				release(cache.put(getImageHeight(), getImageWidth(), getGridSize(), variant, distortion));
+			}
 		}
-		super.calcDeltaMatrices(deltaX, deltaY);
+	}
+
+	@Override
+	void setCacheLimits(int maxEntries, long maxBytes) {
+		release(cache.setLimits(maxEntries, maxBytes));
+	}
+
+	@Override
+	CacheStatistics getCacheStatistics() {
+		return regenerateDistMat ? null : cache.getStatistics();
+	}
+
+	@Override
+	boolean isDistortionStatic() {
+		return !regenerateDistMat;
+	}
+
+	@Override
+	int getDistortionVersion() {
+		return distortion.getId();
 	}
 
 	@Override
 	protected double getXShift(int gridY, int gridX) {
-		return xIndexer.get(gridY, gridX) * scale;
+		return distortion.getX(gridY, gridX) * scale;
 	}
 
 	@Override
 	protected double getYShift(int gridY, int gridX) {
-		return yIndexer.get(gridY, gridX) * scale;
+		return distortion.getY(gridY, gridX) * scale;
+	}
+
+	/**
+	 * Returns the transformation in the notation of the command line.
+	 */
+	@Override
+	public String toString() {
+		return "random:" + getConfiguredGridSize() + ":" + scale + ":" + (regenerateDistMat ? "t" : "f");
 	}
 }
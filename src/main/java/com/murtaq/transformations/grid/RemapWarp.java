@@ -0,0 +1,331 @@
+package com.murtaq.transformations.grid;
+
+import static com.murtaq.transformations.grid.GridTransform.bilinearInterpolation;
+import static org.bytedeco.javacpp.opencv_core.BORDER_REPLICATE;
+import static org.bytedeco.javacpp.opencv_core.CV_16SC2;
+import static org.bytedeco.javacpp.opencv_core.CV_32F;
+import static org.bytedeco.javacpp.opencv_core.CV_64F;
+import static org.bytedeco.javacpp.opencv_imgproc.INTER_LINEAR;
+import static org.bytedeco.javacpp.opencv_imgproc.convertMaps;
+import static org.bytedeco.javacpp.opencv_imgproc.remap;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bytedeco.javacpp.indexer.DoubleIndexer;
+import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.bytedeco.javacpp.opencv_core.Mat;
+import org.bytedeco.javacpp.opencv_core.Rect;
+import org.bytedeco.javacpp.opencv_core.Scalar;
+
+import com.murtaq.transformations.TransformContext;
+import com.murtaq.util.NativeMemoryTracker;
+import com.murtaq.util.ScratchMats;
+
+/**
+ * Warps images with the native OpenCV remap function. The delta matrices of
+ * the grid transformation are interpolated to absolute pixel maps. For
+ * distortions that only depend on the image size, the maps are converted to
+ * the faster fixed-point representation once and cached per image size and
+ * distortion, so that the variants of an image can share the cache. The
+ * cached maps are tracked by the {@link NativeMemoryTracker} until they are
+ * released.
+ */
+class RemapWarp {
+
+	/*
+	 * Number of distortions the fixed-point maps are cached for.
+	 */
+	private static final int MAX_CACHED_MAPS = 8;
+
+	private final ScratchMats scratch = new ScratchMats(4);
+
+	private final Map<MapsKey, CachedMaps> cache = new LinkedHashMap<MapsKey, CachedMaps>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<MapsKey, CachedMaps> eldest) {
+			if (size() > MAX_CACHED_MAPS) {
+				retire(eldest.getValue());
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/**
+	 * Applies the distortion of the grid transformation on an image.
+	 * 
+	 * @param image
+	 *            The image to transform.
+	 * @param dst
+	 *            Receives the transformed image.
+	 * @param transform
+	 *            The grid transformation providing the distortion.
+	 * @param context
+	 *            Describes the output that is produced.
+	 */
+	void applyOn(Mat image, Mat dst, IGridTransform transform, TransformContext context) {
+		int height = image.arrayHeight();
+		int width = image.arrayWidth();
+
+		CachedMaps maps = null;
+		Mat deltaX = null, deltaY = null;
+		int gridSize, version;
+		boolean cacheable;
+		synchronized (transform) {
+			transform.prepare(height, width, context);
+			gridSize = transform.getGridSize();
+			version = transform.getDistortionVersion();
+			cacheable = transform.isDistortionStatic();
+			if (cacheable) {
+				maps = getCached(new MapsKey(height, width, version));
+			}
+			if (maps == null) {
+				deltaX = scratch.get(0, height, width, CV_64F);
+				deltaY = scratch.get(1, height, width, CV_64F);
+				transform.calcDeltaMatrices(deltaX.<DoubleIndexer> createIndexer(),
+						deltaY.<DoubleIndexer> createIndexer());
+			}
+		}
+
+		if (maps == null) {
+			Mat mapX = scratch.get(2, height, width, CV_32F);
+			Mat mapY = scratch.get(3, height, width, CV_32F);
+			buildMaps(deltaX.<DoubleIndexer> createIndexer(), deltaY.<DoubleIndexer> createIndexer(),
+					mapX.<FloatIndexer> createIndexer(), mapY.<FloatIndexer> createIndexer(), gridSize);
+			if (!cacheable) {
+				remap(image, dst, mapX, mapY, INTER_LINEAR, BORDER_REPLICATE, new Scalar());
+				return;
+			}
+			maps = new CachedMaps();
+			convertMaps(mapX, mapY, maps.map1, maps.map2, CV_16SC2, false);
+			maps.bytes = NativeMemoryTracker.sizeOf(maps.map1) + NativeMemoryTracker.sizeOf(maps.map2);
+			NativeMemoryTracker.allocated(maps.bytes);
+			putCached(new MapsKey(height, width, version), maps);
+		}
+		try {
+			remap(image, dst, maps.map1, maps.map2, INTER_LINEAR, BORDER_REPLICATE, new Scalar());
+		} finally {
+			release(maps);
+		}
+	}
+
+	/**
+	 * Warps a part of an image with maps covering only that part. The maps are
+	 * not cached, as they don't cover the whole image.
+	 * 
+	 * @param image
+	 *            The image to transform.
+	 * @param dst
+	 *            Receives the transformed image. Must have the size and type
+	 *            of the image.
+	 * @param indexDx
+	 *            The pixel changes in x-direction, starting at the first pixel
+	 *            of the part.
+	 * @param indexDy
+	 *            The pixel changes in y-direction, starting at the first pixel
+	 *            of the part.
+	 * @param gridSize
+	 *            The pixel distance between grid lines.
+	 * @param top
+	 *            The first row of the part, which lies on a grid line.
+	 * @param left
+	 *            The first column of the part, which lies on a grid line.
+	 * @param bottom
+	 *            The row after the last row of the part.
+	 * @param right
+	 *            The column after the last column of the part.
+	 */
+	void applyOnTile(Mat image, Mat dst, DoubleIndexer indexDx, DoubleIndexer indexDy, int gridSize, int top,
+			int left, int bottom, int right) {
+		Mat mapX = scratch.get(2, bottom - top, right - left, CV_32F);
+		Mat mapY = scratch.get(3, bottom - top, right - left, CV_32F);
+		buildMaps(indexDx, indexDy, mapX.<FloatIndexer> createIndexer(), mapY.<FloatIndexer> createIndexer(), gridSize,
+				top, left, image.arrayHeight(), image.arrayWidth());
+		Mat tile = new Mat(dst, new Rect(left, top, right - left, bottom - top));
+		try {
+			remap(image, tile, mapX, mapY, INTER_LINEAR, BORDER_REPLICATE, new Scalar());
+		} finally {
+			tile.close();
+		}
+	}
+
+	/**
+	 * Releases the scratch matrices of the calling thread.
+	 */
+	void releaseBuffers() {
+		scratch.release();
+	}
+
+	/**
+	 * Returns the cached maps for the image size and distortion and registers
+	 * the caller as their user until {@link #release(CachedMaps)} is called.
+	 */
+	private synchronized CachedMaps getCached(MapsKey key) {
+		CachedMaps maps = cache.get(key);
+		if (maps == null) {
+			return null;
+		}
+		maps.users++;
+		return maps;
+	}
+
+	/**
+	 * Caches the maps, registering the caller as their user.
+	 */
+	private synchronized void putCached(MapsKey key, CachedMaps maps) {
+		maps.users++;
+		CachedMaps replaced = cache.put(key, maps);
+		if (replaced != null) {
+			retire(replaced);
+		}
+	}
+
+	private synchronized void release(CachedMaps maps) {
+		maps.users--;
+		if (maps.retired && maps.users == 0) {
+			maps.close();
+		}
+	}
+
+	/**
+	 * Marks maps removed from the cache for release. They are released as soon
+	 * as no other thread uses them anymore.
+	 */
+	private void retire(CachedMaps maps) {
+		maps.retired = true;
+		if (maps.users == 0) {
+			maps.close();
+		}
+	}
+
+	/**
+	 * Interpolates the delta values at the grid line intersections to the
+	 * absolute source position of every pixel. Uses the same interpolation and
+	 * clamping as the Java warp.
+	 * 
+	 * @param indexDx
+	 *            The pixel changes in x-direction.
+	 * @param indexDy
+	 *            The pixel changes in y-direction.
+	 * @param mapX
+	 *            Receives the source x-position of each pixel.
+	 * @param mapY
+	 *            Receives the source y-position of each pixel.
+	 * @param gridSize
+	 *            The pixel distance between grid lines.
+	 */
+	static void buildMaps(DoubleIndexer indexDx, DoubleIndexer indexDy, FloatIndexer mapX, FloatIndexer mapY,
+			int gridSize) {
+		buildMaps(indexDx, indexDy, mapX, mapY, gridSize, 0, 0, (int) indexDx.height(), (int) indexDx.width());
+	}
+
+	/**
+	 * Interpolates the delta values at the grid line intersections to the
+	 * absolute source position of every pixel in a part of the image.
+	 * 
+	 * @param indexDx
+	 *            The pixel changes in x-direction, starting at the first pixel
+	 *            of the part.
+	 * @param indexDy
+	 *            The pixel changes in y-direction, starting at the first pixel
+	 *            of the part.
+	 * @param mapX
+	 *            Receives the source x-position of each pixel of the part.
+	 * @param mapY
+	 *            Receives the source y-position of each pixel of the part.
+	 * @param gridSize
+	 *            The pixel distance between grid lines.
+	 * @param top
+	 *            The first row of the part, which lies on a grid line.
+	 * @param left
+	 *            The first column of the part, which lies on a grid line.
+	 * @param height
+	 *            The height of the whole image.
+	 * @param width
+	 *            The width of the whole image.
+	 */
+	static void buildMaps(DoubleIndexer indexDx, DoubleIndexer indexDy, FloatIndexer mapX, FloatIndexer mapY,
+			int gridSize, int top, int left, int height, int width) {
+		int bottom = top + (int) mapX.height();
+		int right = left + (int) mapX.width();
+		for (int i = top; i < bottom; i += gridSize) {
+			for (int j = left; j < right; j += gridSize) {
+				int nextI = i + gridSize;
+				int nextJ = j + gridSize;
+				double w = gridSize;
+				double h = gridSize;
+				if (nextI >= height) {
+					nextI = height - 1;
+					h = nextI - i + 1;
+				}
+				if (nextJ >= width) {
+					nextJ = width - 1;
+					w = nextJ - j + 1;
+				}
+				// Positions in the delta matrices and maps of the part
+				int y = i - top, x = j - left, nextY = nextI - top, nextX = nextJ - left;
+				for (double di = 0; di < h; di++) {
+					for (double dj = 0; dj < w; dj++) {
+						double deltaX = bilinearInterpolation(di / h, dj / w, indexDx.get(y, x),
+								indexDx.get(y, nextX), indexDx.get(nextY, x), indexDx.get(nextY, nextX));
+						double deltaY = bilinearInterpolation(di / h, dj / w, indexDy.get(y, x),
+								indexDy.get(y, nextX), indexDy.get(nextY, x), indexDy.get(nextY, nextX));
+						double targetX = Math.min(Math.max(j + dj + deltaX, 0), width - 1);
+						double targetY = Math.min(Math.max(i + di + deltaY, 0), height - 1);
+						mapX.put((long) (y + di), (long) (x + dj), (float) targetX);
+						mapY.put((long) (y + di), (long) (x + dj), (float) targetY);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The fixed-point maps for one image size and distortion.
+	 */
+	private static class CachedMaps {
+
+		private final Mat map1 = new Mat();
+		private final Mat map2 = new Mat();
+		private long bytes;
+		private int users;
+		private boolean retired;
+
+		void close() {
+			NativeMemoryTracker.allocated(-bytes);
+			map1.close();
+			map2.close();
+		}
+	}
+
+	/**
+	 * Identifies the maps of a distortion for one image size.
+	 */
+	private static class MapsKey {
+
+		private final int height, width, version;
+
+		MapsKey(int height, int width, int version) {
+			this.height = height;
+			this.width = width;
+			this.version = version;
+		}
+
+		@Override
+		public int hashCode() {
+			return (height * 31 + width) * 31 + version;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof MapsKey)) {
+				return false;
+			}
+			MapsKey other = (MapsKey) obj;
+			return height == other.height && width == other.width && version == other.version;
+		}
+	}
+}
@@ -32,6 +32,16 @@ abstract class SimpleGridTransform extends IGridTransform {
 		}
 	}
 
+	@Override
+	protected void calcGridDeltas(DoubleIndexer gridX, DoubleIndexer gridY) {
+		for (int y = 0; y < gridX.height(); y++) {
+			for (int x = 0; x < gridX.width(); x++) {
+				gridX.put(y, x, getXShift(y, x));
+				gridY.put(y, x, getYShift(y, x));
+			}
+		}
+	}
+
 	/**
 	 * Calculates the difference in x-position for pixels at grid line
 	 * intersections in the delta matrix.
@@ -49,4 +49,19 @@ public class SineFunctionTransform extends SimpleGridTransform {
 	protected double getYShift(int gridY, int gridX) {
 		return Math.sin((yShiftPar[1] * gridX + yShiftPar[2] * gridY + yShiftPar[3]) * multiplierToRad) * yShiftPar[0];
 	}
+
+	/**
+	 * Returns the transformation in the notation of the command line.
+	 */
+	@Override
+	public String toString() {
+		String desc = "sine:" + getConfiguredGridSize();
+		for (double par : xShiftPar) {
+			desc += ":" + par;
+		}
+		for (double par : yShiftPar) {
+			desc += ":" + par;
+		}
+		return desc;
+	}
 }
@@ -0,0 +1,32 @@
+package com.murtaq.transformations.grid;
+
+/**
+ * How exactly the Java backend calculates the warped pixels.
+ */
+public enum WarpAccuracy {
+
+	/**
+	 * Calculates the source position and the interpolation of every pixel in
+	 * double precision. This is the reference implementation.
+	 */
+	EXACT,
+
+	/**
+	 * Calculates the source positions in fixed-point arithmetic with 1/1024
+	 * pixel precision and interpolates the pixels with integer weights. The
+	 * fractions of the pixels inside a grid square are taken from tables
+	 * shared by all squares of the same size. Pixels may differ from the exact
+	 * calculation by one.
+	 */
+	FAST,
+
+	/**
+	 * Calculates the pixels of grid squares at least as wide as the vector
+	 * size of the CPU with the Vector API kernel in single precision, and the
+	 * other pixels exactly. Pixels may differ from the exact calculation by
+	 * one. Needs JDK 17 or newer and the incubator module
+	 * jdk.incubator.vector.
+	 */
+	VECTOR;
+
+}
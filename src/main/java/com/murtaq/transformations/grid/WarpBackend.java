@@ -0,0 +1,21 @@
+package com.murtaq.transformations.grid;
+
+/**
+ * The implementations available to warp an image with the delta matrices of
+ * a grid transformation.
+ */
+public enum WarpBackend {
+
+	/**
+	 * Interpolates every pixel in Java. This is the reference implementation.
+	 */
+	JAVA,
+
+	/**
+	 * Converts the delta matrices to absolute pixel maps and warps the image
+	 * with the native OpenCV remap function. Results may differ from the Java
+	 * backend by rounding, as remap interpolates in fixed-point arithmetic.
+	 */
+	REMAP;
+
+}
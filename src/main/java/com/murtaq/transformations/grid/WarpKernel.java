@@ -0,0 +1,118 @@
+package com.murtaq.transformations.grid;
+
+import java.lang.reflect.Constructor;
+
+import org.bytedeco.javacpp.indexer.UByteIndexer;
+
+/**
+ * Warps a pixel row of a grid square, as an alternative to the scalar loop of
+ * the Java backend. The only implementation uses the incubating Vector API of
+ * JDK 17. It is compiled from src/main/java-vector by the "vector" profile,
+ * which is active when building on JDK 17 or newer, and can only be used if
+ * the JVM was started with --add-modules jdk.incubator.vector. As its results
+ * may differ from the scalar loop, which stays the reference implementation,
+ * it is only used with {@link WarpAccuracy#VECTOR}.
+ * <p>
+ * Kernels keep intermediate results between calls, so each thread needs its
+ * own instance.
+ */
+abstract class WarpKernel {
+
+	private static final String VECTOR_KERNEL = "com.murtaq.transformations.grid.VectorWarpKernel";
+
+	private static final Constructor<? extends WarpKernel> VECTOR = findVectorKernel();
+
+	/**
+	 * Whether the Vector API kernel can be used in the running JVM.
+	 */
+	static final boolean AVAILABLE = VECTOR != null;
+
+	/**
+	 * The minimum width of the Vector API kernel, which depends on the vector
+	 * size of the CPU, or 0 if it is not available.
+	 */
+	static final int VECTOR_WIDTH = AVAILABLE ? create().getMinimumWidth() : 0;
+
+	/**
+	 * Creates a kernel for the calling thread.
+	 * 
+	 * @param src
+	 *            The image that is warped.
+	 * @return The kernel or null, if no kernel is available or the image is
+	 *         too large for it. The kernel addresses the image data with int
+	 *         offsets, so it must be smaller than 2 GB.
+	 */
+	static WarpKernel create(UByteIndexer src) {
+		if (VECTOR == null || src.height() * src.strides()[0] > Integer.MAX_VALUE) {
+			return null;
+		}
+		return create();
+	}
+
+	private static WarpKernel create() {
+		try {
+			return VECTOR.newInstance();
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	private static Constructor<? extends WarpKernel> findVectorKernel() {
+		try {
+			// Initializing the class fails if the incubator module is missing
+			Constructor<? extends WarpKernel> constructor = Class
+					.forName(VECTOR_KERNEL, true, WarpKernel.class.getClassLoader()).asSubclass(WarpKernel.class)
+					.getDeclaredConstructor();
+			constructor.newInstance();
+			return constructor;
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the number of pixels the kernel processes at once. Rows of grid
+	 * squares narrower than that are faster in the scalar loop.
+	 * 
+	 * @return The number of pixels.
+	 */
+	abstract int getMinimumWidth();
+
+	/**
+	 * Warps the pixels of one row of a grid square. Calculates the same as the
+	 * scalar loop of the Java backend: the pixel changes are interpolated
+	 * bilinearly between the corners of the square, the source position is
+	 * clamped to the image and the source pixels around it are blended
+	 * bilinearly. Results may differ from it by rounding, as the kernel may
+	 * calculate in single precision.
+	 * 
+	 * @param src
+	 *            The source image.
+	 * @param dst
+	 *            Receives the warped pixels.
+	 * @param channels
+	 *            The number of channels of the images.
+	 * @param height
+	 *            The height of the images.
+	 * @param width
+	 *            The width of the images.
+	 * @param row
+	 *            The image row of the pixels.
+	 * @param col
+	 *            The image column of the first pixel, which lies on a grid
+	 *            line.
+	 * @param count
+	 *            The number of pixels, which is also the width of the square.
+	 * @param rowFraction
+	 *            The position of the row inside the square, from 0 for its
+	 *            top row to below 1.
+	 * @param deltaX
+	 *            The pixel changes in x-direction at the corners of the
+	 *            square: top left, top right, bottom left and bottom right.
+	 * @param deltaY
+	 *            The pixel changes in y-direction at the corners of the
+	 *            square, in the same order.
+	 */
+	abstract void warpRow(UByteIndexer src, UByteIndexer dst, int channels, int height, int width, int row, int col,
+			int count, double rowFraction, double[] deltaX, double[] deltaY);
+}
@@ -0,0 +1,245 @@
+package com.murtaq.transformations.grid;
+
+import static org.bytedeco.javacpp.opencv_core.CV_16U;
+import static org.bytedeco.javacpp.opencv_core.CV_32F;
+import static org.bytedeco.javacpp.opencv_core.CV_8U;
+
+import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.bytedeco.javacpp.indexer.Indexer;
+import org.bytedeco.javacpp.indexer.UByteIndexer;
+import org.bytedeco.javacpp.indexer.UShortIndexer;
+import org.bytedeco.javacpp.opencv_core.Mat;
+
+/**
+ * Blends the four source pixels around a warped position into a target pixel
+ * for the scalar loop of the Java backend. There is one implementation per
+ * element type of the images, and for 8-bit images one per common channel
+ * count with the channels unrolled. It is chosen once per image, so the loop
+ * neither asks the image for its type nor loops over the channels per pixel.
+ * <p>
+ * The pixels are addressed by their element offsets in the image data, which
+ * the loop calculates from the strides of the sampler. Integer results are
+ * truncated like the values of 8-bit images always were.
+ */
+abstract class WarpSampler {
+
+	final long srcRowStride, srcPixelStride;
+	final long dstRowStride, dstPixelStride;
+
+	private WarpSampler(Indexer src, Indexer dst) {
+		this.srcRowStride = src.strides()[0];
+		this.srcPixelStride = src.strides()[1];
+		this.dstRowStride = dst.strides()[0];
+		this.dstPixelStride = dst.strides()[1];
+	}
+
+	/**
+	 * Creates the sampler for the type of the images.
+	 * 
+	 * @param src
+	 *            The image that is warped.
+	 * @param dst
+	 *            Receives the warped image. Must have the type of the source
+	 *            image.
+	 * @return The sampler.
+	 * @throws IllegalArgumentException
+	 *             when the images have neither 8-bit or 16-bit unsigned nor
+	 *             32-bit float elements.
+	 */
+	static WarpSampler create(Mat src, Mat dst) {
+		switch (src.depth()) {
+		case CV_8U:
+			switch (src.channels()) {
+			case 1:
+				return new Byte1(src, dst);
+			case 3:
+				return new Byte3(src, dst);
+			case 4:
+				return new Byte4(src, dst);
+			default:
+				return new Bytes(src, dst);
+			}
+		case CV_16U:
+			return new UShorts(src, dst);
+		case CV_32F:
+			return new Floats(src, dst);
+		default:
+			throw new IllegalArgumentException("The java warp backend only supports images with 8-bit or 16-bit "
+					+ "unsigned or 32-bit float elements, use the remap backend for other images.");
+		}
+	}
+
+	/**
+	 * Blends the channels of four source pixels bilinearly into a target
+	 * pixel. The right pixels equal the left ones and the bottom pixels equal
+	 * the top ones if the position lies on a column or row.
+	 * 
+	 * @param dst
+	 *            The offset of the target pixel.
+	 * @param topLeft
+	 *            The offset of the top left source pixel.
+	 * @param topRight
+	 *            The offset of the top right source pixel.
+	 * @param bottomLeft
+	 *            The offset of the bottom left source pixel.
+	 * @param bottomRight
+	 *            The offset of the bottom right source pixel.
+	 * @param fracX
+	 *            The position between the left and the right pixels.
+	 * @param fracY
+	 *            The position between the top and the bottom pixels.
+	 */
+	abstract void blend(long dst, long topLeft, long topRight, long bottomLeft, long bottomRight, double fracX,
+			double fracY);
+
+	private static final class Byte1 extends WarpSampler {
+
+		private final UByteIndexer src, dst;
+
+		Byte1(Mat src, Mat dst) {
+			this(src.<UByteIndexer> createIndexer(), dst.<UByteIndexer> createIndexer());
+		}
+
+		private Byte1(UByteIndexer src, UByteIndexer dst) {
+			super(src, dst);
+			this.src = src;
+			this.dst = dst;
+		}
+
+		@Override
+		void blend(long d, long tl, long tr, long bl, long br, double fracX, double fracY) {
+			dst.put(d, (int) GridTransform.bilinearInterpolation(fracY, fracX, src.get(tl), src.get(tr), src.get(bl),
+					src.get(br)));
+		}
+	}
+
+	private static final class Byte3 extends WarpSampler {
+
+		private final UByteIndexer src, dst;
+
+		Byte3(Mat src, Mat dst) {
+			this(src.<UByteIndexer> createIndexer(), dst.<UByteIndexer> createIndexer());
+		}
+
+		private Byte3(UByteIndexer src, UByteIndexer dst) {
+			super(src, dst);
+			this.src = src;
+			this.dst = dst;
+		}
+
+		@Override
+		void blend(long d, long tl, long tr, long bl, long br, double fracX, double fracY) {
+			dst.put(d, (int) GridTransform.bilinearInterpolation(fracY, fracX, src.get(tl), src.get(tr), src.get(bl),
+					src.get(br)));
+			dst.put(d + 1, (int) GridTransform.bilinearInterpolation(fracY, fracX, src.get(tl + 1), src.get(tr + 1),
+					src.get(bl + 1), src.get(br + 1)));
+			dst.put(d + 2, (int) GridTransform.bilinearInterpolation(fracY, fracX, src.get(tl + 2), src.get(tr + 2),
+					src.get(bl + 2), src.get(br + 2)));
+		}
+	}
+
+	private static final class Byte4 extends WarpSampler {
+
+		private final UByteIndexer src, dst;
+
+		Byte4(Mat src, Mat dst) {
+			this(src.<UByteIndexer> createIndexer(), dst.<UByteIndexer> createIndexer());
+		}
+
+		private Byte4(UByteIndexer src, UByteIndexer dst) {
+			super(src, dst);
+			this.src = src;
+			this.dst = dst;
+		}
+
+		@Override
+		void blend(long d, long tl, long tr, long bl, long br, double fracX, double fracY) {
+			dst.put(d, (int) GridTransform.bilinearInterpolation(fracY, fracX, src.get(tl), src.get(tr), src.get(bl),
+					src.get(br)));
+			dst.put(d + 1, (int) GridTransform.bilinearInterpolation(fracY, fracX, src.get(tl + 1), src.get(tr + 1),
+					src.get(bl + 1), src.get(br + 1)));
+			dst.put(d + 2, (int) GridTransform.bilinearInterpolation(fracY, fracX, src.get(tl + 2), src.get(tr + 2),
+					src.get(bl + 2), src.get(br + 2)));
+			dst.put(d + 3, (int) GridTransform.bilinearInterpolation(fracY, fracX, src.get(tl + 3), src.get(tr + 3),
+					src.get(bl + 3), src.get(br + 3)));
+		}
+	}
+
+	/*
+	 * 8-bit images with any other number of channels.
+	 */
+	private static final class Bytes extends WarpSampler {
+
+		private final UByteIndexer src, dst;
+		private final int channels;
+
+		Bytes(Mat src, Mat dst) {
+			this(src.<UByteIndexer> createIndexer(), dst.<UByteIndexer> createIndexer(), src.channels());
+		}
+
+		private Bytes(UByteIndexer src, UByteIndexer dst, int channels) {
+			super(src, dst);
+			this.src = src;
+			this.dst = dst;
+			this.channels = channels;
+		}
+
+		@Override
+		void blend(long d, long tl, long tr, long bl, long br, double fracX, double fracY) {
+			for (int c = 0; c < channels; c++) {
+				dst.put(d + c, (int) GridTransform.bilinearInterpolation(fracY, fracX, src.get(tl + c),
+						src.get(tr + c), src.get(bl + c), src.get(br + c)));
+			}
+		}
+	}
+
+	private static final class UShorts extends WarpSampler {
+
+		private final UShortIndexer src, dst;
+		private final int channels;
+
+		UShorts(Mat src, Mat dst) {
+			this(src.<UShortIndexer> createIndexer(), dst.<UShortIndexer> createIndexer(), src.channels());
+		}
+
+		private UShorts(UShortIndexer src, UShortIndexer dst, int channels) {
+			super(src, dst);
+			this.src = src;
+			this.dst = dst;
+			this.channels = channels;
+		}
+
+		@Override
+		void blend(long d, long tl, long tr, long bl, long br, double fracX, double fracY) {
+			for (int c = 0; c < channels; c++) {
+				dst.put(d + c, (int) GridTransform.bilinearInterpolation(fracY, fracX, src.get(tl + c),
+						src.get(tr + c), src.get(bl + c), src.get(br + c)));
+			}
+		}
+	}
+
+	private static final class Floats extends WarpSampler {
+
+		private final FloatIndexer src, dst;
+		private final int channels;
+
+		Floats(Mat src, Mat dst) {
+			this(src.<FloatIndexer> createIndexer(), dst.<FloatIndexer> createIndexer(), src.channels());
+		}
+
+		private Floats(FloatIndexer src, FloatIndexer dst, int channels) {
+			super(src, dst);
+			this.src = src;
+			this.dst = dst;
+			this.channels = channels;
+		}
+
+		@Override
+		void blend(long d, long tl, long tr, long bl, long br, double fracX, double fracY) {
+			for (int c = 0; c < channels; c++) {
+				dst.put(d + c, (float) GridTransform.bilinearInterpolation(fracY, fracX, src.get(tl + c),
+						src.get(tr + c), src.get(bl + c), src.get(br + c)));
+			}
+		}
+	}
+}
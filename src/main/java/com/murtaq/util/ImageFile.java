@@ -0,0 +1,83 @@
+package com.murtaq.util;
+
+import java.io.File;
+
+/**
+ * An image file found in the source location together with its detected
+ * format. Images read from an archive also hold the path of their entry and
+ * the encoded content, which was read while searching the archive.
+ */
+public class ImageFile {
+
+	private final File file;
+	private final ImageFormat format;
+	private final File archive;
+	private final String entry;
+	private final byte[] content;
+
+	public ImageFile(File file, ImageFormat format) {
+		this.file = file;
+		this.format = format;
+		this.archive = null;
+		this.entry = null;
+		this.content = null;
+	}
+
+	/**
+	 * Creates an image file for an entry of an archive.
+	 * 
+	 * @param archive
+	 *            The archive containing the image.
+	 * @param entry
+	 *            The path of the entry inside the archive, separated by '/'.
+	 * @param format
+	 *            The detected format of the image.
+	 * @param content
+	 *            The encoded image.
+	 */
+	public ImageFile(File archive, String entry, ImageFormat format, byte[] content) {
+		this.file = new File(archive, entry);
+		this.format = format;
+		this.archive = archive;
+		this.entry = entry;
+		this.content = content;
+	}
+
+	/**
+	 * Returns the image file. For entries of an archive, this is the path of
+	 * the entry appended to the path of the archive, which doesn't exist on the
+	 * disk.
+	 * 
+	 * @return The image file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	public ImageFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Returns the archive the image was read from.
+	 * 
+	 * @return The archive or null, if the image is a file of its own.
+	 */
+	public File getArchive() {
+		return archive;
+	}
+
+	public String getEntry() {
+		return entry;
+	}
+
+	/**
+	 * Returns the encoded image of an archive entry.
+	 * 
+	 * @return The encoded image or null, if the image is a file of its own.
+	 */
+	public byte[] getContent() {
+		return content;
+	}
+
+}
@@ -0,0 +1,147 @@
+package com.murtaq.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * The image formats which can be read by the transformation pipeline together
+ * with their file signatures and extensions.
+ */
+public enum ImageFormat {
+
+	JPEG("jpg", "jpeg", "jpe"),
+	PNG("png"),
+	BMP("bmp", "dib"),
+	TIFF("tif", "tiff"),
+	WEBP("webp"),
+	PNM("ppm", "pgm", "pbm", "pnm");
+
+	/**
+	 * Number of bytes needed to tell all supported formats apart. WebP needs
+	 * the most, as its signature follows the RIFF header.
+	 */
+	public static final int SIGNATURE_LENGTH = 12;
+
+	private static final ThreadLocal<ByteBuffer> HEADERS = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(SIGNATURE_LENGTH);
+		}
+	};
+
+	private final String[] extensions;
+
+	private ImageFormat(String... extensions) {
+		this.extensions = extensions;
+	}
+
+	/**
+	 * Returns the usual file extension of the format.
+	 * 
+	 * @return The extension without the dot.
+	 */
+	public String getExtension() {
+		return extensions[0];
+	}
+
+	/**
+	 * Detects the format of an image file by reading the first bytes of it.
+	 * 
+	 * @param file
+	 *            The file to examine.
+	 * @return The format or null, if the file is no supported image or can't
+	 *         be read.
+	 */
+	public static ImageFormat detect(File file) {
+		ByteBuffer header = HEADERS.get();
+		header.clear();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			// A single read may return less bytes on network mounts
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+				continue;
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		header.flip();
+		return fromSignature(header);
+	}
+
+	/**
+	 * Detects the format of an image by its first bytes.
+	 * 
+	 * @param header
+	 *            Holds the first bytes of the image.
+	 * @param length
+	 *            The number of bytes in the header.
+	 * @return The format or null, if the bytes belong to no supported image.
+	 */
+	public static ImageFormat detect(byte[] header, int length) {
+		return fromSignature(ByteBuffer.wrap(header, 0, length));
+	}
+
+	/**
+	 * Determines the format of an image file by its extension only, without
+	 * accessing the file.
+	 * 
+	 * @param file
+	 *            The file to examine.
+	 * @return The format or null, if the extension belongs to no supported
+	 *         format.
+	 */
+	public static ImageFormat fromExtension(File file) {
+		return fromExtension(file.getName());
+	}
+
+	/**
+	 * Determines the format of an image file by the extension of its name.
+	 * 
+	 * @param name
+	 *            The name of the file.
+	 * @return The format or null, if the extension belongs to no supported
+	 *         format.
+	 */
+	public static ImageFormat fromExtension(String name) {
+		String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+		for (ImageFormat format : values()) {
+			for (String formatExtension : format.extensions) {
+				if (formatExtension.equals(extension)) {
+					return format;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static ImageFormat fromSignature(ByteBuffer header) {
+		int length = header.remaining();
+		if (length >= 3 && unsigned(header, 0) == 0xFF && unsigned(header, 1) == 0xD8 && unsigned(header, 2) == 0xFF) {
+			return JPEG;
+		}
+		if (length >= 8 && header.getLong(0) == 0x89504E470D0A1A0AL) {
+			return PNG;
+		}
+		if (length >= 2 && header.get(0) == 'B' && header.get(1) == 'M') {
+			return BMP;
+		}
+		if (length >= 4 && (header.getInt(0) == 0x49492A00 || header.getInt(0) == 0x4D4D002A)) {
+			return TIFF;
+		}
+		if (length >= 12 && header.getInt(0) == 0x52494646 && header.getInt(8) == 0x57454250) {
+			return WEBP;
+		}
+		if (length >= 3 && header.get(0) == 'P' && header.get(1) >= '1' && header.get(1) <= '6'
+				&& Character.isWhitespace(header.get(2))) {
+			return PNM;
+		}
+		return null;
+	}
+
+	private static int unsigned(ByteBuffer buffer, int index) {
+		return buffer.get(index) & 0xFF;
+	}
+}
@@ -0,0 +1,151 @@
+package com.murtaq.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the size and the number of components of a JPEG image from its frame
+ * header without decoding the image. Only the markers in front of the frame
+ * header are read, which are usually a few kilobytes of metadata.
+ */
+public class JpegHeader {
+
+	private final int height, width, components;
+
+	private JpegHeader(int height, int width, int components) {
+		this.height = height;
+		this.width = width;
+		this.components = components;
+	}
+
+	/**
+	 * Reads the frame header of a JPEG file.
+	 * 
+	 * @param file
+	 *            The JPEG file.
+	 * @return The header or null, if the file can't be read or no frame header
+	 *         was found.
+	 */
+	public static JpegHeader read(File file) {
+		try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 13)) {
+			return read(in);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the frame header of an encoded JPEG image.
+	 * 
+	 * @param content
+	 *            The encoded image.
+	 * @return The header or null, if no frame header was found.
+	 */
+	public static JpegHeader read(byte[] content) {
+		try {
+			return read(new ByteArrayInputStream(content));
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static JpegHeader read(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(stream);
+		if (in.readUnsignedShort() != 0xFFD8) {
+			return null;
+		}
+		try {
+			while (true) {
+				if (in.readUnsignedByte() != 0xFF) {
+					return null;
+				}
+				int marker = in.readUnsignedByte();
+				// Markers may be preceded by any number of fill bytes
+				while (marker == 0xFF) {
+					marker = in.readUnsignedByte();
+				}
+				if (marker == 0x01 || marker >= 0xD0 && marker <= 0xD7) {
+					continue;
+				}
+				if (marker == 0xD9 || marker == 0xDA) {
+					// The image data starts without a frame header
+					return null;
+				}
+				int length = in.readUnsignedShort();
+				if (isStartOfFrame(marker)) {
+					in.readUnsignedByte();
+					int height = in.readUnsignedShort();
+					int width = in.readUnsignedShort();
+					int components = in.readUnsignedByte();
+					return height > 0 && width > 0 ? new JpegHeader(height, width, components) : null;
+				}
+				skip(in, length - 2);
+			}
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+
+	/*
+	 * SOF0 to SOF15, except for DHT (C4), JPG (C8) and DAC (CC), which share
+	 * the range.
+	 */
+	private static boolean isStartOfFrame(int marker) {
+		return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+	}
+
+	private static void skip(DataInputStream in, int length) throws IOException {
+		while (length > 0) {
+			int skipped = (int) in.skip(length);
+			if (skipped <= 0) {
+				in.readUnsignedByte();
+				skipped = 1;
+			}
+			length -= skipped;
+		}
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the number of color components, i.e. 1 for grayscale and 3 for
+	 * color images.
+	 * 
+	 * @return The number of components.
+	 */
+	public int getComponents() {
+		return components;
+	}
+
+	/**
+	 * Returns the largest factor the decoder can shrink the image by, so that
+	 * it still covers the requested size. The decoder rounds the reduced size
+	 * up.
+	 * 
+	 * @param minHeight
+	 *            The height the reduced image must at least have.
+	 * @param minWidth
+	 *            The width the reduced image must at least have.
+	 * @return 8, 4 or 2, or 1 if the image can't be reduced.
+	 */
+	public int getReductionFactor(int minHeight, int minWidth) {
+		for (int factor = 8; factor > 1; factor /= 2) {
+			if ((height + factor - 1) / factor >= minHeight && (width + factor - 1) / factor >= minWidth) {
+				return factor;
+			}
+		}
+		return 1;
+	}
+}
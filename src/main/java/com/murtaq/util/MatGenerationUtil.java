@@ -6,11 +6,10 @@ import static org.bytedeco.javacpp.opencv_imgproc.CV_INTER_CUBIC;
 import static org.bytedeco.javacpp.opencv_imgproc.GaussianBlur;
 import static org.bytedeco.javacpp.opencv_imgproc.resize;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import org.bytedeco.javacpp.opencv_core.Mat;
 import org.bytedeco.javacpp.opencv_core.Size;
-import org.bytedeco.javacpp.indexer.UByteIndexer;
 
 public class MatGenerationUtil {
 
@@ -21,19 +20,23 @@ public class MatGenerationUtil {
 	 *            Height of the image.
 	 * @param width
 	 *            Width of the image.
+	 * @param random
+	 *            The random generator for the pixel colors.
 	 * @return The generated image.
 	 */
-	private static Mat generateBlackWhiteNoise(int height, int width) {
+	private static Mat generateBlackWhiteNoise(int height, int width, SplittableRandom random) {
 		Mat noise = new Mat(height, width, CV_8U);
-		UByteIndexer noiseIndexer = noise.createIndexer();
 
-		Random r = new Random();
-
-		for (int i = 0; i < height; i++) {
-			for (int j = 0; j < width; j++) {
-				noiseIndexer.put(i, j, r.nextInt(256));
+		// Each random long provides the colors of eight pixels
+		byte[] pixels = new byte[height * width];
+		for (int i = 0; i < pixels.length; i += 8) {
+			long bits = random.nextLong();
+			for (int j = i; j < Math.min(i + 8, pixels.length); j++) {
+				pixels[j] = (byte) bits;
+				bits >>>= 8;
 			}
 		}
+		noise.data().put(pixels);
 		return noise;
 	}
 
@@ -45,17 +48,21 @@ public class MatGenerationUtil {
 	 *            Height of the image.
 	 * @param width
 	 *            Width of the image.
+	 * @param random
+	 *            The random generator for the pixel colors.
 	 * @return The generated image.
 	 */
-	public static Mat generateDistortedNoise(int height, int width) {
+	public static Mat generateDistortedNoise(int height, int width, SplittableRandom random) {
 		float scalingFactor = 0.7f;
 		int srcHeight = (int) Math.round(height * scalingFactor);
 		int srcWidth = (int) Math.round(width * scalingFactor);
-		Mat srcNoise = generateBlackWhiteNoise(srcHeight, srcWidth);
+		Mat srcNoise = generateBlackWhiteNoise(srcHeight, srcWidth, random);
 		Mat resizedNoise = new Mat(height, width, CV_8U);
 		resize(srcNoise, resizedNoise, resizedNoise.size(), 0, 0, CV_INTER_CUBIC);
+		srcNoise.close();
 		Mat blurredNoise = new Mat(height, width, CV_8U);
 		GaussianBlur(resizedNoise, blurredNoise, new Size(5, 5), 0d, 0d, CV_GAUSSIAN);
+		resizedNoise.close();
 		return blurredNoise;
 	}
 }
@@ -0,0 +1,74 @@
+package com.murtaq.util;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+
+/**
+ * Counts the native memory of matrices that are kept between images, like the
+ * scratch matrices of the threads and the cached distortions and maps of the
+ * transformations. They are owned by objects that live longer than a run, so
+ * the memory is counted for the whole process and forwarded to the listener
+ * of the current run.
+ */
+public class NativeMemoryTracker {
+
+	/**
+	 * Receives the changes of the tracked memory.
+	 */
+	public interface Listener {
+
+		/**
+		 * Tracks memory that was allocated or, for negative values, released.
+		 * 
+		 * @param bytes
+		 *            The number of bytes.
+		 */
+		void allocated(long bytes);
+	}
+
+	private static long trackedBytes;
+	private static Listener listener;
+
+	private NativeMemoryTracker() {
+	}
+
+	/**
+	 * Tracks memory that was allocated or, for negative values, released.
+	 * 
+	 * @param bytes
+	 *            The number of bytes.
+	 */
+	public static synchronized void allocated(long bytes) {
+		if (bytes == 0) {
+			return;
+		}
+		trackedBytes += bytes;
+		if (listener != null) {
+			listener.allocated(bytes);
+		}
+	}
+
+	/**
+	 * Sets the listener receiving the changes of the tracked memory. A new
+	 * listener immediately receives the memory tracked so far.
+	 * 
+	 * @param newListener
+	 *            The listener or null, to stop forwarding the changes.
+	 */
+	public static synchronized void setListener(Listener newListener) {
+		listener = newListener;
+		if (listener != null && trackedBytes != 0) {
+			listener.allocated(trackedBytes);
+		}
+	}
+
+	/**
+	 * Returns the native memory occupied by the data of a matrix.
+	 * 
+	 * @param mat
+	 *            The matrix.
+	 * @return The size in bytes.
+	 */
+	public static long sizeOf(Mat mat) {
+		return mat.total() * mat.elemSize();
+	}
+}
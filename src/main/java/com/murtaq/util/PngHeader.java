@@ -0,0 +1,113 @@
+package com.murtaq.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the size and the pixel layout of a PNG image from its IHDR chunk
+ * without decoding the image. The chunk directly follows the signature, so
+ * only the first 26 bytes are read.
+ */
+public class PngHeader {
+
+	private static final long SIGNATURE = 0x89504E470D0A1A0AL;
+	private static final int IHDR = 0x49484452;
+
+	private final int height, width, channels, bytesPerSample;
+
+	private PngHeader(int height, int width, int channels, int bytesPerSample) {
+		this.height = height;
+		this.width = width;
+		this.channels = channels;
+		this.bytesPerSample = bytesPerSample;
+	}
+
+	/**
+	 * Reads the IHDR chunk of a PNG file.
+	 * 
+	 * @param file
+	 *            The PNG file.
+	 * @return The header or null, if the file can't be read or doesn't start
+	 *         with an IHDR chunk.
+	 */
+	public static PngHeader read(File file) {
+		try (InputStream in = new FileInputStream(file)) {
+			return read(in);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the IHDR chunk of an encoded PNG image.
+	 * 
+	 * @param content
+	 *            The encoded image.
+	 * @return The header or null, if the image doesn't start with an IHDR
+	 *         chunk.
+	 */
+	public static PngHeader read(byte[] content) {
+		try {
+			return read(new ByteArrayInputStream(content));
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static PngHeader read(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(stream);
+		try {
+			if (in.readLong() != SIGNATURE) {
+				return null;
+			}
+			in.readInt();
+			if (in.readInt() != IHDR) {
+				return null;
+			}
+			int width = in.readInt();
+			int height = in.readInt();
+			int bitDepth = in.readUnsignedByte();
+			int colorType = in.readUnsignedByte();
+			if (height <= 0 || width <= 0) {
+				return null;
+			}
+			// OpenCV decodes palettes to BGR and adds color to gray images
+			// with alpha
+			int channels = colorType == 0 ? 1 : colorType == 2 || colorType == 3 ? 3 : 4;
+			return new PngHeader(height, width, channels, bitDepth == 16 ? 2 : 1);
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the number of channels of the decoded image.
+	 * 
+	 * @return 1 for grayscale, 3 for color and 4 for images with alpha.
+	 */
+	public int getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Returns the size of a channel value of the decoded image.
+	 * 
+	 * @return 2 for 16-bit images, otherwise 1.
+	 */
+	public int getBytesPerSample() {
+		return bytesPerSample;
+	}
+}
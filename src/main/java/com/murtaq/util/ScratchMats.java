@@ -0,0 +1,68 @@
+package com.murtaq.util;
+
+import org.bytedeco.javacpp.opencv_core.Mat;
+
+/**
+ * Provides each thread with its own set of reusable matrices for intermediate
+ * results. A matrix is only reallocated when the requested size or type
+ * differs from its previous use, so processing images of the same size does
+ * not allocate any native memory. The memory of the matrices is tracked by
+ * the {@link NativeMemoryTracker}.
+ */
+public class ScratchMats {
+
+	private final ThreadLocal<Mat[]> mats;
+
+	/**
+	 * Creates the scratch matrices.
+	 * 
+	 * @param count
+	 *            The number of matrices per thread.
+	 */
+	public ScratchMats(final int count) {
+		mats = new ThreadLocal<Mat[]>() {
+			@Override
+			protected Mat[] initialValue() {
+				Mat[] initial = new Mat[count];
+				for (int i = 0; i < count; i++) {
+					initial[i] = new Mat();
+				}
+				return initial;
+			}
+		};
+	}
+
+	/**
+	 * Returns a matrix of the current thread with the requested size and type.
+	 * Its content is undefined.
+	 * 
+	 * @param index
+	 *            The index of the matrix.
+	 * @param rows
+	 *            The number of rows.
+	 * @param cols
+	 *            The number of columns.
+	 * @param type
+	 *            The type of the matrix.
+	 * @return The matrix.
+	 */
+	public Mat get(int index, int rows, int cols, int type) {
+		Mat mat = mats.get()[index];
+		long before = NativeMemoryTracker.sizeOf(mat);
+		mat.create(rows, cols, type);
+		NativeMemoryTracker.allocated(NativeMemoryTracker.sizeOf(mat) - before);
+		return mat;
+	}
+
+	/**
+	 * Releases the native memory of the matrices of the current thread. They
+	 * are allocated again when the thread requests them the next time.
+	 */
+	public void release() {
+		for (Mat mat : mats.get()) {
+			NativeMemoryTracker.allocated(-NativeMemoryTracker.sizeOf(mat));
+			mat.close();
+		}
+		mats.remove();
+	}
+}